@@ -1,13 +1,18 @@
 package com.mydj.backend.config;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.web.SecurityFilterChain;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
@@ -34,10 +39,23 @@ public class SecurityConfig {
                     // downloads
                     "/download", "/download/**"
                 ).permitAll()
+                // diagnostics, some of which flush caches or rebuild state: this machine only
+                .requestMatchers("/admin/**").access((authentication, ctx) ->
+                    new AuthorizationDecision(isLocal(ctx.getRequest())))
                 .anyRequest().permitAll()
             )
             .headers(h -> h.frameOptions(f -> f.sameOrigin()));
 
         return http.build();
     }
+
+    // A request relayed by a proxy on this machine is not a local one.
+    private static boolean isLocal(HttpServletRequest request) {
+        if (request.getHeader("X-Forwarded-For") != null || request.getHeader("Forwarded") != null) return false;
+        try {
+            return InetAddress.getByName(request.getRemoteAddr()).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
 }
@@ -0,0 +1,138 @@
+package com.mydj.backend.controller;
+
+import com.mydj.backend.service.PlaybackStateService;
+import com.mydj.backend.service.PlaylistAddCoalescer;
+import com.mydj.backend.service.PlaylistMembership;
+import com.mydj.backend.service.PlaylistSearchIndex;
+import com.mydj.backend.service.PlaylistTrackCache;
+import com.mydj.backend.service.RequestIngestionService;
+import com.mydj.backend.service.RequestJournal;
+import com.mydj.backend.service.SearchResultCache;
+import com.mydj.backend.service.SpotifyCallScheduler;
+import com.mydj.backend.service.SpotifyConcurrencyLimiter;
+import com.mydj.backend.service.SpotifyHttpTransport;
+import com.mydj.backend.service.SpotifyMetadataCache;
+import com.mydj.backend.service.SpotifyService;
+import com.mydj.backend.service.TrackSearchService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+public class AdminController {
+
+    private final SpotifyHttpTransport transport;
+    private final SpotifyMetadataCache metadataCache;
+    private final SearchResultCache searchCache;
+    private final PlaylistTrackCache playlistTrackCache;
+    private final PlaylistMembership membership;
+    private final PlaylistAddCoalescer playlistAdds;
+    private final RequestJournal journal;
+    private final PlaybackStateService playbackState;
+    private final RequestIngestionService ingestion;
+    private final SpotifyService spotifyService;
+    private final SpotifyCallScheduler callScheduler;
+    private final SpotifyConcurrencyLimiter concurrencyLimiter;
+    private final TrackSearchService trackSearch;
+    private final PlaylistSearchIndex playlistIndex;
+
+    public AdminController(SpotifyHttpTransport transport, SpotifyMetadataCache metadataCache,
+                           SearchResultCache searchCache, PlaylistTrackCache playlistTrackCache,
+                           PlaylistMembership membership, PlaylistAddCoalescer playlistAdds,
+                           RequestJournal journal, PlaybackStateService playbackState,
+                           RequestIngestionService ingestion, SpotifyService spotifyService,
+                           SpotifyCallScheduler callScheduler, SpotifyConcurrencyLimiter concurrencyLimiter,
+                           TrackSearchService trackSearch, PlaylistSearchIndex playlistIndex) {
+        this.transport = transport;
+        this.metadataCache = metadataCache;
+        this.searchCache = searchCache;
+        this.playlistTrackCache = playlistTrackCache;
+        this.membership = membership;
+        this.playlistAdds = playlistAdds;
+        this.journal = journal;
+        this.playbackState = playbackState;
+        this.ingestion = ingestion;
+        this.spotifyService = spotifyService;
+        this.callScheduler = callScheduler;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.trackSearch = trackSearch;
+        this.playlistIndex = playlistIndex;
+    }
+
+    @GetMapping("/admin/http")
+    public ResponseEntity<Map<String, Object>> httpStats() {
+        return ResponseEntity.ok(transport.stats());
+    }
+
+    @GetMapping("/admin/scheduler")
+    public ResponseEntity<Map<String, Object>> schedulerStats() {
+        Map<String, Object> out = new LinkedHashMap<>(callScheduler.stats());
+        out.put("concurrency", concurrencyLimiter.stats());
+        return ResponseEntity.ok(out);
+    }
+
+    @GetMapping("/admin/search")
+    public ResponseEntity<Map<String, Object>> searchStats() {
+        return ResponseEntity.ok(trackSearch.stats());
+    }
+
+    @PostMapping("/admin/search/reindex")
+    public ResponseEntity<Map<String, Object>> reindexPlaylists() {
+        playlistIndex.requestRefresh();
+        return ResponseEntity.ok(trackSearch.stats());
+    }
+
+    @GetMapping("/admin/cache")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        return ResponseEntity.ok(cacheStatsBody());
+    }
+
+    @GetMapping("/admin/flights")
+    public ResponseEntity<Map<String, Object>> flightStats() {
+        return ResponseEntity.ok(spotifyService.flightStats());
+    }
+
+    @DeleteMapping("/admin/cache")
+    public ResponseEntity<Map<String, Object>> flushCache() {
+        metadataCache.flush();
+        searchCache.flush();
+        playlistTrackCache.flush();
+        return ResponseEntity.ok(cacheStatsBody());
+    }
+
+    private Map<String, Object> cacheStatsBody() {
+        Map<String, Object> out = new LinkedHashMap<>(metadataCache.stats());
+        out.put("searches", searchCache.stats());
+        out.put("playlists", playlistTrackCache.stats());
+        out.put("membership", membership.stats());
+        return out;
+    }
+
+    @GetMapping("/admin/journal")
+    public ResponseEntity<Map<String, Object>> journalStats() {
+        return ResponseEntity.ok(journal.stats());
+    }
+
+    @PostMapping("/admin/journal/compact")
+    public ResponseEntity<Map<String, Object>> compactJournal() {
+        journal.compact();
+        return ResponseEntity.ok(journal.stats());
+    }
+
+    @GetMapping("/admin/playback")
+    public ResponseEntity<Map<String, Object>> playbackStats() {
+        return ResponseEntity.ok(playbackState.stats());
+    }
+
+    @GetMapping("/admin/ingest")
+    public ResponseEntity<Map<String, Object>> ingestStats() {
+        return ResponseEntity.ok(ingestion.stats());
+    }
+
+    @GetMapping("/admin/playlistAdds")
+    public ResponseEntity<Map<String, Object>> playlistAddStats() {
+        return ResponseEntity.ok(playlistAdds.stats());
+    }
+}
@@ -1,5 +1,6 @@
 package com.mydj.backend.controller;
 
+import com.mydj.backend.service.PlaybackStateService;
 import com.mydj.backend.service.SpotifyService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -16,9 +17,11 @@ import java.util.stream.Collectors;
 public class DeviceController {
 
     private final SpotifyService spotifyService;
+    private final PlaybackStateService playbackState;
 
-    public DeviceController(SpotifyService spotifyService) {
+    public DeviceController(SpotifyService spotifyService, PlaybackStateService playbackState) {
         this.spotifyService = spotifyService;
+        this.playbackState = playbackState;
     }
 
     @GetMapping("/devices")
@@ -38,6 +41,8 @@ public class DeviceController {
     @PostMapping("/setDevice")
     public ResponseEntity<String> setDevice(@RequestParam String deviceId) {
         try {
+            // Live, not the shared poller's state: that can be half a minute old while paused,
+            // and a stale match would skip a transfer the DJ asked for.
             var ctx = spotifyService.getCurrentPlayback();
             String current = (ctx != null && ctx.getDevice() != null) ? ctx.getDevice().getId() : null;
 
@@ -46,6 +51,7 @@ public class DeviceController {
             }
 
             spotifyService.transferPlayback(deviceId, true);
+            playbackState.poke();
             return ResponseEntity.ok("Device set and playback transferred: " + deviceId);
         } catch (Exception e) {
             e.printStackTrace();
@@ -24,7 +24,7 @@ public class GenreController {
     }
 
     private String owner() throws Exception {
-        return spotifyService.getCurrentUserProfile().getId();
+        return spotifyService.currentOwnerId();
     }
 
     @GetMapping("/genres")
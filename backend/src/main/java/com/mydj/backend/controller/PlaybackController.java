@@ -1,13 +1,15 @@
 package com.mydj.backend.controller;
 
 import com.mydj.backend.model.PlaybackStateDTO;
+import com.mydj.backend.service.AutoDjService;
+import com.mydj.backend.service.PlaybackStateService;
 import com.mydj.backend.service.SpotifyService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import se.michaelthelin.spotify.model_objects.miscellaneous.CurrentlyPlayingContext;
-import se.michaelthelin.spotify.model_objects.specification.Track;
-import com.mydj.backend.util.UriUtils;
 import java.util.Map;
 import java.util.Optional;
 
@@ -15,63 +17,39 @@ import java.util.Optional;
 public class PlaybackController {
 
     private final SpotifyService spotifyService;
+    private final PlaybackStateService playbackState;
+    private final AutoDjService autoDj;
 
-    public PlaybackController(SpotifyService spotifyService) {
+    public PlaybackController(SpotifyService spotifyService, PlaybackStateService playbackState,
+                              AutoDjService autoDj) {
         this.spotifyService = spotifyService;
+        this.playbackState = playbackState;
+        this.autoDj = autoDj;
     }
 
     @GetMapping("/playback")
     public ResponseEntity<PlaybackStateDTO> getPlayback() {
         try {
-            CurrentlyPlayingContext ctx = spotifyService.getCurrentPlayback();
-            if (ctx == null || ctx.getItem() == null) {
-                return ResponseEntity.ok(new PlaybackStateDTO("", "", false, 0, 0, 0, spotifyService.getCurrentDeviceId()));
+            PlaybackStateDTO state = playbackState.current();
+            if (state == null) {
+                return ResponseEntity.status(500).body(new PlaybackStateDTO("", "", false, 0, 0, 0, null));
             }
-
-            boolean isPlaying = Boolean.TRUE.equals(ctx.getIs_playing());
-            int progressMs = ctx.getProgress_ms() != null ? ctx.getProgress_ms() : 0;
-            int volumePercent = ctx.getDevice() != null ? ctx.getDevice().getVolume_percent() : 0;
-            String deviceId = ctx.getDevice() != null ? ctx.getDevice().getId() : spotifyService.getCurrentDeviceId();
-
-            String trackName = "";
-            String artistName = "";
-            int durationMs = 0;
-            String albumImageUrl = null;
-            String trackUri = null;
-
-            if (ctx.getItem() instanceof Track t) {
-                trackName = t.getName();
-                artistName = t.getArtists().length > 0 ? t.getArtists()[0].getName() : "";
-                durationMs = t.getDurationMs();
-
-                trackUri = t.getUri();
-                
-                var images = (t.getAlbum() != null) ? t.getAlbum().getImages() : null;
-                if (images != null && images.length > 0) {
-                    albumImageUrl = images[0].getUrl(); 
-                }
-            }
-
-            PlaybackStateDTO dto = new PlaybackStateDTO(
-                    trackName,
-                    artistName,
-                    isPlaying,
-                    progressMs,
-                    durationMs,
-                    volumePercent,
-                    deviceId
-            );
-            dto.setAlbumImageUrl(albumImageUrl);
-            if (trackUri != null && !trackUri.isBlank()) {                 
-                dto.setTrackUri(UriUtils.canonicalTrackUri(trackUri));      
-            }
-            return ResponseEntity.ok(dto);
+            return ResponseEntity.ok(state);
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(500).body(new PlaybackStateDTO("", "", false, 0, 0, 0, null));
         }
     }
 
+    @GetMapping(value = "/playback/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamPlayback() {
+        // Keep reverse proxies from buffering the event stream.
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .header("X-Accel-Buffering", "no")
+                .body(playbackState.subscribe());
+    }
+
     @PostMapping("/playback/play")
     public ResponseEntity<String> play(@RequestBody(required = false) Map<String, String> body) {
         try {
@@ -80,6 +58,7 @@ public class PlaybackController {
                 deviceId = Optional.of(body.get("deviceId"));
             }
             spotifyService.play(deviceId);
+            playbackState.poke();
             return ResponseEntity.ok("Resumed");
         } catch (Exception e) {
             e.printStackTrace();
@@ -91,6 +70,7 @@ public class PlaybackController {
     public ResponseEntity<String> pause() {
         try {
             spotifyService.pause();
+            playbackState.poke();
             return ResponseEntity.ok("Paused");
         } catch (Exception e) {
             e.printStackTrace();
@@ -101,7 +81,8 @@ public class PlaybackController {
     @PostMapping("/playback/next")
     public ResponseEntity<String> next() {
         try {
-            spotifyService.next(); 
+            spotifyService.next();
+            playbackState.poke();
             return ResponseEntity.ok("Skipped to next");
         } catch (Exception e) {
             e.printStackTrace();
@@ -113,6 +94,7 @@ public class PlaybackController {
     public ResponseEntity<String> previous() {
         try {
             spotifyService.previous();
+            playbackState.poke();
             return ResponseEntity.ok("Skipped to previous");
         } catch (Exception e) {
             e.printStackTrace();
@@ -128,6 +110,7 @@ public class PlaybackController {
         }
         try {
             spotifyService.seek(positionMs);
+            playbackState.poke();
             return ResponseEntity.ok("Seeked");
         } catch (Exception e) {
             e.printStackTrace();
@@ -143,6 +126,7 @@ public class PlaybackController {
         }
         try {
             spotifyService.setVolume(volumePercent);
+            playbackState.poke();
             return ResponseEntity.ok("Volume set");
         } catch (Exception e) {
             e.printStackTrace();
@@ -166,11 +150,48 @@ public class PlaybackController {
         }
     }
 
+    @GetMapping("/autodj")
+    public ResponseEntity<Map<String, Object>> autoDjStatus() {
+        try {
+            return ResponseEntity.ok(autoDj.status(spotifyService.currentOwnerId()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(500).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * {"enabled": true, "playlistId": "...", "depth": 2, "includeRequests": false}, or {"enabled": false}.
+     * Guest requests are only queued when asked for, as doing so takes them out of the DJ's hands.
+     */
+    @PostMapping("/autodj")
+    public ResponseEntity<Map<String, Object>> setAutoDj(@RequestBody Map<String, Object> body) {
+        try {
+            String owner = spotifyService.currentOwnerId();
+            if (Boolean.TRUE.equals(body.get("enabled"))) {
+                String playlistId = body.get("playlistId") instanceof String p && !p.isBlank() ? p : null;
+                int depth = body.get("depth") instanceof Number n ? n.intValue() : 2;
+                boolean includeRequests = Boolean.TRUE.equals(body.get("includeRequests"));
+                if (playlistId == null && !includeRequests) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "Nothing to queue from"));
+                }
+                autoDj.enable(owner, playlistId, depth, includeRequests);
+            } else {
+                autoDj.disable(owner);
+            }
+            return ResponseEntity.ok(autoDj.status(owner));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(500).body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @PostMapping("/play/playlist")
     public ResponseEntity<String> playFromPlaylist(@RequestParam("playlistId") String playlistId,
                                                 @RequestParam("uri") String trackUri) {
         try {
             spotifyService.playFromPlaylist(playlistId, trackUri);
+            playbackState.poke();
             return ResponseEntity.ok("ok");
         } catch (Exception e) {
             e.printStackTrace();
@@ -182,6 +203,7 @@ public class PlaybackController {
     public ResponseEntity<String> setShuffle(@RequestParam("state") boolean state) {
         try {
             spotifyService.setShuffle(state);
+            playbackState.poke();
             return ResponseEntity.ok("ok");
         } catch (Exception e) {
             e.printStackTrace();
@@ -193,6 +215,7 @@ public class PlaybackController {
     public ResponseEntity<String> setRepeat(@RequestParam("mode") String mode) { // "off" | "context" | "track"
         try {
             spotifyService.setRepeat(mode);
+            playbackState.poke();
             return ResponseEntity.ok("ok");
         } catch (Exception e) {
             e.printStackTrace();
@@ -1,35 +1,52 @@
 package com.mydj.backend.controller;
 
+import com.mydj.backend.service.PlaylistCleaner;
+import com.mydj.backend.service.PlaylistMembership;
+import com.mydj.backend.service.PlaylistTrackCache;
 import com.mydj.backend.service.SpotifyService;
 import com.mydj.backend.util.UriUtils;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import se.michaelthelin.spotify.model_objects.specification.PlaylistSimplified;
 import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
 import se.michaelthelin.spotify.model_objects.specification.Track;
 import se.michaelthelin.spotify.model_objects.specification.Paging;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
 
 @RestController
 public class PlaylistController {
 
     private final SpotifyService spotifyService;
+    private final PlaylistTrackCache playlistTrackCache;
+    private final PlaylistMembership membership;
+    private final PlaylistCleaner playlistCleaner;
     private String selectedPlaylistId = null;
 
-    public PlaylistController(SpotifyService spotifyService) {
+    private static final JsonFactory JSON = new JsonFactory();
+
+    public PlaylistController(SpotifyService spotifyService, PlaylistTrackCache playlistTrackCache,
+                              PlaylistMembership membership, PlaylistCleaner playlistCleaner) {
         this.spotifyService = spotifyService;
+        this.playlistTrackCache = playlistTrackCache;
+        this.membership = membership;
+        this.playlistCleaner = playlistCleaner;
     }
 
     @GetMapping("/playlists")
     public ResponseEntity<List<Map<String, String>>> getPlaylists() {
         try {
-            Paging<PlaylistSimplified> paging = spotifyService.getCurrentUserPlaylists(50);
             List<Map<String, String>> out = new ArrayList<>();
-            for (PlaylistSimplified p : paging.getItems()) {
+            for (PlaylistSimplified p : spotifyService.getAllCurrentUserPlaylists()) {
                 out.add(Map.of("name", p.getName(), "id", p.getId()));
             }
             return ResponseEntity.ok(out);
@@ -45,53 +62,131 @@ public class PlaylistController {
         return ResponseEntity.ok("Playlist selected: " + selectedPlaylistId);
     }
 
+    /**
+     * Removes every track from the playlist. Clients that accept
+     * text/event-stream get progress events while it runs.
+     */
     @DeleteMapping("/clearPlaylist")
-    public ResponseEntity<String> clearPlaylist(@RequestBody Map<String, String> body) {
+    public ResponseEntity<?> clearPlaylist(@RequestBody Map<String, String> body,
+                                           @RequestHeader(value = "Accept", required = false) String accept) {
         String pid = body.get("playlistId");
+        if (pid == null) {
+            return ResponseEntity.badRequest().body("Missing playlistId");
+        }
+        if (accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE)) {
+            return ResponseEntity.ok(playlistCleaner.clearWithProgress(pid));
+        }
         try {
-            // fetch up to 100 items
-            Paging<PlaylistTrack> itemsPage = spotifyService.getPlaylistTracks(pid, 100);
-            PlaylistTrack[] items = itemsPage.getItems();
-            if (items.length == 0) {
+            int removed = playlistCleaner.clear(pid, new PlaylistCleaner.Progress() {
+                @Override public void read(int tracks) {}
+                @Override public void removed(int done, int total) {}
+            });
+            if (removed == 0) {
                 return ResponseEntity.ok("Playlist is already empty.");
             }
-
-            JsonArray jsonArray = new JsonArray();
-            for (PlaylistTrack item : items) {
-                if (item.getTrack() instanceof Track t) {
-                    String uri = t.getUri();
-                    JsonObject obj = new JsonObject();
-                    obj.addProperty("uri", UriUtils.canonicalTrackUri(uri));
-                    jsonArray.add(obj);
-                }
-            }
-
-            spotifyService.removeItemsFromPlaylist(pid, jsonArray);
-            return ResponseEntity.ok("Cleared " + items.length + " tracks from playlist.");
+            return ResponseEntity.ok("Cleared " + removed + " tracks from playlist.");
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(500).body("Error clearing playlist: " + e.getMessage());
         }
     }
 
+    /**
+     * Every track of the playlist as a JSON array, streamed page by page as
+     * Spotify returns them. The snapshot id is checked first: an unchanged
+     * playlist is answered from {@link PlaylistTrackCache}, or with 304 when
+     * the client already has it. On a miss a copy of the response is kept for
+     * the cache, but only up to the cache's entry limit; past that the copy
+     * is dropped, so a long playlist is streamed without ever being held in
+     * memory whole and is read again next time.
+     */
     @GetMapping("/playlists/{id}/tracks")
-    public ResponseEntity<List<Map<String, String>>> getPlaylistTracks(@PathVariable("id") String playlistId) {
+    public ResponseEntity<?> getPlaylistTracks(@PathVariable("id") String playlistId,
+                                               @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        String snapshotId;
+        Paging<PlaylistTrack> first;
+        long readStartedAt = membership.readStarted();
         try {
-            Paging<PlaylistTrack> paging = spotifyService.getPlaylistTracks(playlistId, 50);
-            List<Map<String, String>> response = new ArrayList<>();
-            for (PlaylistTrack pt : paging.getItems()) {
-                if (pt.getTrack() instanceof Track t) {
-                    response.add(Map.of(
-                        "name",   t.getName(),
-                        "artist", t.getArtists()[0].getName(),
-                        "uri",    UriUtils.canonicalTrackUri(t.getUri())
-                    ));
-                }
+            snapshotId = spotifyService.getPlaylistSnapshotId(playlistId);
+            String etag = "\"" + snapshotId + "\"";
+            if (snapshotId != null && etag.equals(ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+            byte[] cached = playlistTrackCache.get(playlistId, snapshotId);
+            if (cached != null) {
+                return ResponseEntity.ok().eTag(etag).contentType(MediaType.APPLICATION_JSON).body(cached);
             }
-            return ResponseEntity.ok(response);
+            first = spotifyService.getFirstPlaylistTrackPage(playlistId);
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(500).body(Collections.emptyList());
         }
+
+        StreamingResponseBody body = out -> {
+            CappedTee tee = new CappedTee(out, playlistTrackCache.maxEntryBytes());
+            List<String> uris = new ArrayList<>();
+            try (JsonGenerator g = JSON.createGenerator(tee)) {
+                g.writeStartArray();
+                spotifyService.forEachPlaylistTrackPage(playlistId, first, items -> {
+                    for (PlaylistTrack pt : items) {
+                        if (pt.getTrack() instanceof Track t) {
+                            String uri = UriUtils.canonicalTrackUri(t.getUri());
+                            uris.add(uri);
+                            g.writeStartObject();
+                            g.writeStringField("name", t.getName());
+                            g.writeStringField("artist", t.getArtists()[0].getName());
+                            g.writeStringField("uri", uri);
+                            g.writeEndObject();
+                        }
+                    }
+                    g.flush();
+                });
+                g.writeEndArray();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                // Too late for a status code; break the response rather than end a short list.
+                throw new IOException("Playlist page fetch failed: " + e.getMessage(), e);
+            }
+            playlistTrackCache.put(playlistId, snapshotId, tee.copy());
+            membership.replace(playlistId, snapshotId, uris, readStartedAt);
+        };
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (snapshotId != null) ok.eTag("\"" + snapshotId + "\"");
+        return ok.body(body);
+    }
+
+    // Writes the response and keeps a copy of it for the cache, until the copy passes the limit.
+    private static final class CappedTee extends OutputStream {
+        private final OutputStream out;
+        private final int limit;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        CappedTee(OutputStream out, int limit) {
+            this.out = out;
+            this.limit = limit;
+        }
+
+        /** What was written, or null once it outgrew the limit. */
+        byte[] copy() {
+            return copy == null ? null : copy.toByteArray();
+        }
+
+        @Override public void write(int b) throws IOException {
+            out.write(b);
+            if (copy != null && copy.size() + 1 > limit) copy = null;
+            if (copy != null) copy.write(b);
+        }
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (copy != null && copy.size() + len > limit) copy = null;
+            if (copy != null) copy.write(b, off, len);
+        }
+        @Override public void flush() throws IOException {
+            out.flush();
+        }
+        @Override public void close() throws IOException {
+            out.close();
+        }
     }
 }
@@ -36,22 +36,20 @@ public class QrController {
     @Value("${qr.signing.secret:}")
     private String signingSecret;
 
-    private boolean isAuthenticated() {
+    private String ownerOrNull() {
         try {
-            spotifyService.getCurrentUserProfile();
-            return true;
+            return spotifyService.currentOwnerId();
         } catch (Exception e) {
-            return false;
+            return null;
         }
     }
 
     @GetMapping(value = "/qr", produces = MediaType.IMAGE_PNG_VALUE)
     public ResponseEntity<byte[]> qr(@RequestParam String url) throws Exception {
-        if (!isAuthenticated()) {
+        String owner = ownerOrNull();
+        if (owner == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
-        var me = spotifyService.getCurrentUserProfile();
-        String owner = me.getId();
         String sig = signingSecret.isEmpty() ? "" : hmac(owner, signingSecret);
         String withOwner = appendParam(appendParam(url, "owner", owner), "sig", sig);
         return renderQr(withOwner);
@@ -59,11 +57,10 @@ public class QrController {
 
     @GetMapping(value = "/qr-default", produces = MediaType.IMAGE_PNG_VALUE)
     public ResponseEntity<byte[]> qrDefault() throws Exception {
-        if (!isAuthenticated()) {
+        String owner = ownerOrNull();
+        if (owner == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
-        var me = spotifyService.getCurrentUserProfile();
-        String owner = me.getId();
         String sig = signingSecret.isEmpty() ? "" : hmac(owner, signingSecret);
         String url = appendParam(appendParam(frontendUrl, "owner", owner), "sig", sig);
         return renderQr(url);
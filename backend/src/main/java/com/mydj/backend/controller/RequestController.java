@@ -1,23 +1,30 @@
 package com.mydj.backend.controller;
 
 import com.mydj.backend.model.RequestRecord;
+import com.mydj.backend.service.PlaylistAddCoalescer;
 import com.mydj.backend.service.RequestClassificationService;
+import com.mydj.backend.service.RequestIngestionService;
 import com.mydj.backend.service.SpotifyService;
+import com.mydj.backend.service.TrackSearchService;
+import com.mydj.backend.util.SingleFlight;
 import com.mydj.backend.util.UriUtils;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import se.michaelthelin.spotify.model_objects.specification.Artist;
-import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+import org.springframework.web.context.request.async.DeferredResult;
 import se.michaelthelin.spotify.model_objects.specification.Track;
 import se.michaelthelin.spotify.model_objects.specification.Paging;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Value;
 import com.mydj.backend.service.RequestQueueService;
 import com.mydj.backend.service.RequestReclassifier;
+import com.mydj.backend.service.SpotifyCallScheduler;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
 
 @RestController
@@ -27,22 +34,33 @@ public class RequestController {
     private final RequestClassificationService classificationService;
     private final RequestQueueService queues;
     private final RequestReclassifier reclassifier;
+    private final RequestIngestionService ingestion;
+    private final TrackSearchService trackSearch;
+    private final PlaylistAddCoalescer playlistAdds;
 
     public RequestController(RequestClassificationService classificationService,
                             SpotifyService spotifyService,
                             RequestQueueService queues,
-                            RequestReclassifier reclassifier) {
+                            RequestReclassifier reclassifier,
+                            RequestIngestionService ingestion,
+                            TrackSearchService trackSearch,
+                            PlaylistAddCoalescer playlistAdds) {
         this.classificationService = classificationService;
         this.spotifyService = spotifyService;
         this.queues = queues;
         this.reclassifier = reclassifier;
+        this.ingestion = ingestion;
+        this.trackSearch = trackSearch;
+        this.playlistAdds = playlistAdds;
     }
 
     @Value("${qr.signing.secret:}")
     private String signingSecret;
 
+    private static final int MAX_WAIT_SECONDS = 30;
+
     private String currentOwner() throws Exception {
-        return spotifyService.getCurrentUserProfile().getId();
+        return spotifyService.currentOwnerId();
     }
 
     @GetMapping("/search")
@@ -50,8 +68,13 @@ public class RequestController {
             @RequestParam String track,
             @RequestParam(name = "limit", defaultValue = "25") int limit) {
         try {
-            List<Map<String, String>> results = spotifyService.searchTrackSummaries(track, limit);
+            List<Map<String, String>> results = trackSearch.search(track, limit);
             return ResponseEntity.ok(results);
+        } catch (SpotifyCallScheduler.ShedException shed) {
+            long retryAfter = Math.max(1, (shed.retryAfterMs() + 999) / 1000);
+            return ResponseEntity.status(503)
+                    .header("Retry-After", Long.toString(retryAfter))
+                    .body(List.of(Map.of("error", "busy")));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(500)
@@ -59,22 +82,92 @@ public class RequestController {
         }
     }
 
+    /**
+     * The owner's queues. Clients that pass the version they hold (via
+     * If-None-Match or ?since=) get 304 when nothing changed, or with since
+     * just the upserts and removals; ?wait=N holds an unchanged request open
+     * for up to N seconds until the next change.
+     */
     @GetMapping("/requests")
-    public ResponseEntity<?> getRequests() {
+    public DeferredResult<ResponseEntity<?>> getRequests(
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "wait", defaultValue = "0") int waitSeconds,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        String owner;
         try {
-            String owner = currentOwner();
-            var valid = queues.getValid(owner).stream().map(RequestRecord::toMap).collect(Collectors.toList());
-            var invalid = queues.getInvalid(owner).stream().map(RequestRecord::toMap).collect(Collectors.toList());
-            return ResponseEntity.ok(Map.of("valid", valid, "invalid", invalid));
+            owner = currentOwner();
         } catch (Exception e) {
-            return ResponseEntity.status(401).body(Map.of("error", "not authenticated"));
+            DeferredResult<ResponseEntity<?>> denied = new DeferredResult<>();
+            denied.setResult(ResponseEntity.status(401).body(Map.of("error", "not authenticated")));
+            return denied;
+        }
+
+        Long known = since != null ? since : parseVersionTag(ifNoneMatch);
+        long wait = Math.max(0, Math.min(waitSeconds, MAX_WAIT_SECONDS));
+        if (wait == 0 || known == null || known != queues.snapshot(owner).version()) {
+            DeferredResult<ResponseEntity<?>> now = new DeferredResult<>();
+            now.setResult(requestsResponse(owner, since, known));
+            return now;
         }
+
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(wait * 1000L);
+        var change = queues.awaitChange(owner, known);
+        change.thenRun(() -> result.setResult(requestsResponse(owner, since, known)));
+        result.onTimeout(() -> {
+            change.cancel(false);
+            result.setResult(requestsResponse(owner, since, known));
+        });
+        return result;
     }
 
+    private ResponseEntity<?> requestsResponse(String owner, Long since, Long known) {
+        var snapshot = queues.snapshot(owner);
+        String etag = "\"" + snapshot.version() + "\"";
+        if (known != null && known == snapshot.version()) {
+            return ResponseEntity.status(304).eTag(etag).build();
+        }
+        if (since != null) {
+            var delta = queues.changesSince(owner, since);
+            if (delta != null) {
+                Map<String, Object> body = new LinkedHashMap<>();
+                body.put("version", delta.version());
+                body.put("full", false);
+                body.put("upserts", delta.upserts().stream().map(RequestController::upsertMap).collect(Collectors.toList()));
+                body.put("removed", delta.removed());
+                return ResponseEntity.ok().eTag("\"" + delta.version() + "\"").body(body);
+            }
+        }
+        // Encoded once per queue version and shared by every reader.
+        return ResponseEntity.ok().eTag(etag).contentType(MediaType.APPLICATION_JSON).body(snapshot.json());
+    }
+
+    private static Map<String, String> upsertMap(RequestRecord r) {
+        Map<String, String> m = new HashMap<>(r.toMap());
+        m.put("valid", Boolean.toString(r.isValid()));
+        return m;
+    }
+
+    private static Long parseVersionTag(String ifNoneMatch) {
+        if (ifNoneMatch == null) return null;
+        String tag = ifNoneMatch.trim();
+        if (tag.startsWith("W/")) tag = tag.substring(2);
+        tag = tag.replace("\"", "");
+        try {
+            return Long.parseLong(tag);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Queues a guest request for enrichment and classification in the
+     * background. Answers 202 with a ticket to poll at /request/{id}, or 429
+     * with Retry-After when the ingestion queue is full.
+     */
     @PostMapping("/request")
-    public ResponseEntity<String> requestTrack(@RequestParam("owner") String owner,
-                                            @RequestParam(value = "sig", required = false) String sig,
-                                            @RequestBody Map<String, String> body) {
+    public ResponseEntity<?> requestTrack(@RequestParam("owner") String owner,
+                                          @RequestParam(value = "sig", required = false) String sig,
+                                          @RequestBody Map<String, String> body) {
         String uri = body.get("uri");
         if (uri == null || uri.isBlank()) {
             return ResponseEntity.badRequest().body("Missing uri");
@@ -93,45 +186,25 @@ public class RequestController {
 
         String canonicalUri = UriUtils.canonicalTrackUri(uri);
         try {
-            if (queues.containsUri(owner, canonicalUri)) {
-                return ResponseEntity.ok("Track already requested: " + canonicalUri);
-            }
-
-            Track track = spotifyService.getTrack(canonicalUri);
-
-            Set<String> genreSet = new LinkedHashSet<>();
-            for (ArtistSimplified a : track.getArtists()) {
-                Artist full = spotifyService.getArtist(a.getId());
-                if (full != null && full.getGenres() != null) {
-                    for (String g : full.getGenres()) {
-                        if (g != null && !g.isBlank()) {
-                            genreSet.add(g.toLowerCase(Locale.ROOT).trim());
-                        }
-                    }
-                }
-            }
-            List<String> artistGenres = new ArrayList<>(genreSet);
-
-            boolean explicit = track.getIsExplicit();
-
-            RequestRecord rec = classificationService.classify(
-                owner,
-                track.getName(),
-                track.getArtists()[0].getName(),
-                artistGenres,
-                explicit,
-                canonicalUri
-            );
-
-            queues.add(owner, rec);
-            return ResponseEntity.ok("Track requested (uri=" + canonicalUri + ")");
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(500).body("Error: " + e.getMessage());
+            RequestIngestionService.Ticket ticket = ingestion.submit(owner, canonicalUri);
+            return ResponseEntity.status(ticket.done() ? 200 : 202)
+                    .location(URI.create("/request/" + ticket.id()))
+                    .body(ticket.toMap());
+        } catch (RequestIngestionService.BusyException busy) {
+            return ResponseEntity.status(429)
+                    .header("Retry-After", Integer.toString(busy.retryAfterSeconds()))
+                    .body(Map.of("error", "busy", "retryAfterSeconds", busy.retryAfterSeconds()));
         }
     }
 
-
+    @GetMapping("/request/{id}")
+    public ResponseEntity<Map<String, Object>> requestStatus(@PathVariable("id") String id) {
+        RequestIngestionService.Ticket ticket = ingestion.status(id);
+        if (ticket == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "unknown request id"));
+        }
+        return ResponseEntity.ok(ticket.toMap());
+    }
 
     @PostMapping("/addToPlaylist")
     public ResponseEntity<String> addToPlaylist(@RequestBody Map<String, String> body) {
@@ -148,11 +221,14 @@ public class RequestController {
             Track track = result.getItems()[0];
             String uri = UriUtils.canonicalTrackUri(track.getUri());
 
-            spotifyService.addTrackToPlaylistByUri(playlistId, uri);
+            boolean added = addOnce(playlistId, uri);
 
             String owner = currentOwner();
             queues.removeByUri(owner, uri);
 
+            if (!added) {
+                return ResponseEntity.status(409).body("Already in playlist: " + track.getName());
+            }
             return ResponseEntity.ok("Track added to playlist: " + track.getName());
         } catch (Exception e) {
             e.printStackTrace();
@@ -169,17 +245,75 @@ public class RequestController {
         }
         String canonicalUri = UriUtils.canonicalTrackUri(uri);
         try {
-            Track track = spotifyService.getTrack(canonicalUri);
-            spotifyService.addTrackToPlaylistByUri(playlistId, canonicalUri);
+            boolean added = addOnce(playlistId, canonicalUri);
             String owner = currentOwner();
             queues.removeByUri(owner, canonicalUri);
-            return ResponseEntity.ok("Track added: " + track.getName());
+            if (!added) {
+                return ResponseEntity.status(409).body("Already in playlist: " + trackName(canonicalUri));
+            }
+            return ResponseEntity.ok("Track added: " + trackName(canonicalUri));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(500).body("Error adding track: " + e.getMessage());
         }
     }
 
+    // False when the playlist already has the track; nothing is sent to Spotify then.
+    private boolean addOnce(String playlistId, String canonicalUri) throws Exception {
+        return SingleFlight.await(playlistAdds.add(playlistId, canonicalUri)) == PlaylistAddCoalescer.Result.ADDED;
+    }
+
+    /**
+     * Adds many tracks in one go, in the order given. Answers which were
+     * added, which the playlist already had, and which failed.
+     */
+    @PostMapping("/addToPlaylistByUris")
+    public ResponseEntity<Map<String, Object>> addToPlaylistByUris(@RequestBody Map<String, Object> body) {
+        Object playlistId = body.get("playlistId");
+        if (!(playlistId instanceof String pid) || !(body.get("trackUris") instanceof List<?> raw) || raw.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Missing trackUris or playlistId"));
+        }
+        List<String> uris = new ArrayList<>();
+        for (Object u : raw) {
+            if (u instanceof String str && !str.isBlank()) uris.add(UriUtils.canonicalTrackUri(str));
+        }
+        try {
+            String owner = currentOwner();
+            List<String> added = new ArrayList<>();
+            List<String> duplicates = new ArrayList<>();
+            List<String> failed = new ArrayList<>();
+            List<CompletableFuture<PlaylistAddCoalescer.Result>> results = playlistAdds.addAll(pid, uris);
+            for (int i = 0; i < uris.size(); i++) {
+                String uri = uris.get(i);
+                try {
+                    if (SingleFlight.await(results.get(i)) == PlaylistAddCoalescer.Result.ADDED) added.add(uri);
+                    else duplicates.add(uri);
+                    queues.removeByUri(owner, uri);
+                } catch (Exception e) {
+                    System.err.println("Batch add failed for " + uri + ": " + e.getMessage());
+                    failed.add(uri);
+                }
+            }
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("added", added);
+            out.put("duplicates", duplicates);
+            out.put("failed", failed);
+            return ResponseEntity.status(failed.size() == uris.size() && !failed.isEmpty() ? 502 : 200).body(out);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(500).body(Map.of("error", e.getMessage() == null ? "unknown" : e.getMessage()));
+        }
+    }
+
+    // Only for the response text; the request was enriched already, so this is normally cached.
+    private String trackName(String canonicalUri) {
+        try {
+            return spotifyService.getTrack(canonicalUri).getName();
+        } catch (Exception e) {
+            return canonicalUri;
+        }
+    }
+
     @GetMapping("/allowExplicit")
     public ResponseEntity<Map<String, Object>> isAllowExplicit() {
         try {
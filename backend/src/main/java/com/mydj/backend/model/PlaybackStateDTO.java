@@ -10,6 +10,7 @@ public class PlaybackStateDTO {
     private String deviceId;
     private String albumImageUrl;
     private String trackUri;
+    private long timestampMs;
 
     public PlaybackStateDTO() {} 
 
@@ -90,5 +91,17 @@ public class PlaybackStateDTO {
 
     public String getAlbumImageUrl() { return albumImageUrl; }
     public void setAlbumImageUrl(String albumImageUrl) { this.albumImageUrl = albumImageUrl; }
+
+    /** Server time (epoch ms) at which progressMs was accurate. */
+    public long getTimestampMs() { return timestampMs; }
+    public void setTimestampMs(long timestampMs) { this.timestampMs = timestampMs; }
+
+    public PlaybackStateDTO copy() {
+        PlaybackStateDTO c = new PlaybackStateDTO(trackName, artistName, isPlaying, progressMs, durationMs, volumePercent, deviceId);
+        c.setAlbumImageUrl(albumImageUrl);
+        c.setTrackUri(trackUri);
+        c.setTimestampMs(timestampMs);
+        return c;
+    }
 }
 
@@ -1,5 +1,6 @@
 package com.mydj.backend.model;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -10,14 +11,21 @@ public class RequestRecord {
     private final boolean explicit;
     private final String uri;
     private final boolean valid;
+    private final List<String> artistGenres;
 
     public RequestRecord(String title, String artist, String genre, boolean explicit, String uri, boolean valid) {
+        this(title, artist, genre, explicit, uri, valid, List.of());
+    }
+
+    public RequestRecord(String title, String artist, String genre, boolean explicit, String uri, boolean valid,
+                         List<String> artistGenres) {
         this.title = title;
         this.artist = artist;
         this.genre = genre;
         this.explicit = explicit;
         this.uri = uri;
         this.valid = valid;
+        this.artistGenres = artistGenres == null ? List.of() : List.copyOf(artistGenres);
     }
 
     public String getTitle() {
@@ -44,6 +52,11 @@ public class RequestRecord {
         return valid;
     }
 
+    /** All genres of the track's artists, kept so the record can be reclassified without Spotify. */
+    public List<String> getArtistGenres() {
+        return artistGenres;
+    }
+
     public Map<String, String> toMap() {
         return Map.of(
             "title", title,
@@ -74,12 +87,13 @@ public class RequestRecord {
                Objects.equals(title, that.title) &&
                Objects.equals(artist, that.artist) &&
                Objects.equals(genre, that.genre) &&
-               Objects.equals(uri, that.uri);
+               Objects.equals(uri, that.uri) &&
+               Objects.equals(artistGenres, that.artistGenres);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(title, artist, genre, explicit, uri, valid);
+        return Objects.hash(title, artist, genre, explicit, uri, valid, artistGenres);
     }
 
     @Override
@@ -91,6 +105,7 @@ public class RequestRecord {
                ", explicit=" + explicit +
                ", uri='" + uri + '\'' +
                ", valid=" + valid +
+               ", artistGenres=" + artistGenres +
                '}';
     }
 }
@@ -0,0 +1,252 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.model.PlaybackStateDTO;
+import com.mydj.backend.model.RequestRecord;
+import com.mydj.backend.util.UriUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the Spotify queue a fixed number of tracks ahead while the DJ's
+ * auto-DJ is on, whether or not a desktop is open. Tracks come from the
+ * valid guest requests first, oldest first, when the DJ asked for that, then
+ * from the chosen playlist in order. One thread does the work: it sleeps
+ * until the current track is within {@code autodj.leadSeconds} of its end,
+ * then queues one track per step until {@code depth} of ours are waiting.
+ */
+@Service
+public class AutoDjService {
+
+    private static final long IDLE_CHECK_MS = 5_000L;
+    private static final long PAUSED_CHECK_MS = 10_000L;
+    private static final long MAX_SLEEP_MS = 15_000L;
+    private static final long STEP_MS = 1_000L;
+    private static final int MAX_DEPTH = 10;
+    // Our queued tracks are presumed dropped (queue cleared in Spotify) after this many other tracks play.
+    private static final int MAX_FOREIGN_TRACKS = 2;
+
+    /**
+     * One owner's auto-DJ. The worker steps it under its monitor; enable()
+     * takes the same monitor to hand its progress to a replacement.
+     */
+    private static final class Session {
+        final String playlistId;
+        final int depth;
+        final boolean includeRequests;
+        final Deque<String> queued = new ArrayDeque<>();
+        List<String> playlist;
+        int cursor;
+        String lastTrackUri;
+        int foreignTracks;
+        long queuedTotal;
+        boolean replaced;
+
+        Session(String playlistId, int depth, boolean includeRequests) {
+            this.playlistId = playlistId;
+            this.depth = depth;
+            this.includeRequests = includeRequests;
+        }
+
+        // The playing track is one of ours: it and anything queued before it are no longer ahead.
+        void advance(String trackUri) {
+            if (trackUri == null || trackUri.equals(lastTrackUri)) return;
+            lastTrackUri = trackUri;
+            if (queued.contains(trackUri)) {
+                while (!queued.isEmpty() && !queued.pollFirst().equals(trackUri)) { }
+                foreignTracks = 0;
+            } else if (!queued.isEmpty() && ++foreignTracks >= MAX_FOREIGN_TRACKS) {
+                queued.clear();
+                foreignTracks = 0;
+            }
+        }
+    }
+
+    private final SpotifyService spotifyService;
+    private final PlaybackStateService playbackState;
+    private final RequestQueueService queues;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("auto-dj").daemon(true).factory());
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    @Value("${autodj.leadSeconds:30}") private long leadSeconds;
+
+    // guarded by this
+    private ScheduledFuture<?> nextStep;
+
+    public AutoDjService(SpotifyService spotifyService, PlaybackStateService playbackState,
+                         RequestQueueService queues) {
+        this.spotifyService = spotifyService;
+        this.playbackState = playbackState;
+        this.queues = queues;
+    }
+
+    @PostConstruct
+    public void start() {
+        schedule(IDLE_CHECK_MS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    public void enable(String owner, String playlistId, int depth, boolean includeRequests) {
+        Session next = new Session(playlistId, Math.max(1, Math.min(MAX_DEPTH, depth)), includeRequests);
+        sessions.compute(owner, (k, prev) -> {
+            if (prev != null) {
+                // What we already queued is still waiting in Spotify; count it against the new depth.
+                synchronized (prev) {
+                    prev.replaced = true;
+                    next.queued.addAll(prev.queued);
+                    next.lastTrackUri = prev.lastTrackUri;
+                    next.foreignTracks = prev.foreignTracks;
+                    next.queuedTotal = prev.queuedTotal;
+                }
+            }
+            return next;
+        });
+        schedule(0);
+    }
+
+    public void disable(String owner) {
+        sessions.remove(owner);
+    }
+
+    public Map<String, Object> status(String owner) {
+        Session s = sessions.get(owner);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", s != null);
+        if (s != null) {
+            out.put("playlistId", s.playlistId);
+            out.put("depth", s.depth);
+            out.put("includeRequests", s.includeRequests);
+            out.put("queuedTotal", s.queuedTotal);
+        }
+        out.put("leadSeconds", leadSeconds);
+        return out;
+    }
+
+    // Worker
+
+    // Keeps whichever of the pending and the requested step comes first.
+    private synchronized void schedule(long delayMs) {
+        if (worker.isShutdown()) return;
+        if (nextStep != null) {
+            if (nextStep.getDelay(TimeUnit.MILLISECONDS) <= delayMs) return;
+            nextStep.cancel(false);
+        }
+        nextStep = worker.schedule(this::tick, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        synchronized (this) {
+            nextStep = null;
+        }
+        long delay = PAUSED_CHECK_MS;
+        try {
+            delay = step();
+        } catch (Exception e) {
+            System.err.println("Auto-DJ step failed: " + e.getMessage());
+        } finally {
+            schedule(delay);
+        }
+    }
+
+    /** Does at most one queue call; returns how long to sleep before the next step. */
+    long step() throws Exception {
+        if (sessions.isEmpty() || !spotifyService.hasUserAuth()) return IDLE_CHECK_MS;
+        String owner = spotifyService.currentOwnerId();
+        Session s = sessions.get(owner);
+        if (s == null) return IDLE_CHECK_MS;
+        synchronized (s) {
+            // Replaced while we looked it up; the new session takes the next step.
+            return s.replaced ? STEP_MS : step(owner, s);
+        }
+    }
+
+    private long step(String owner, Session s) throws Exception {
+        // Reading playback also keeps its poller running while we depend on it.
+        PlaybackStateDTO state = playbackState.current();
+        if (state == null || !state.isPlaying() || state.getDurationMs() <= 0) return PAUSED_CHECK_MS;
+        String current = state.getTrackUri() == null ? null : UriUtils.canonicalTrackUri(state.getTrackUri());
+        s.advance(current);
+
+        long remaining = Math.max(0, state.getDurationMs() - state.getProgressMs());
+        if (s.queued.size() >= s.depth) return Math.min(MAX_SLEEP_MS, remaining + STEP_MS);
+        long leadMs = TimeUnit.SECONDS.toMillis(leadSeconds);
+        if (remaining > leadMs) return Math.min(MAX_SLEEP_MS, remaining - leadMs);
+
+        Pick next = nextTrack(owner, s, current);
+        if (next == null) return MAX_SLEEP_MS;
+        try {
+            spotifyService.queue(next.uri(), Optional.empty());
+        } catch (Exception e) {
+            // Not queued: a request stays with the guests, a playlist track is tried again.
+            if (!next.request() && s.cursor > 0 && next.uri().equals(s.playlist.get(s.cursor - 1))) s.cursor--;
+            throw e;
+        }
+        // Only a request that actually reached Spotify's queue leaves ours.
+        if (next.request()) queues.removeByUri(owner, next.uri());
+        s.queued.addLast(next.uri());
+        s.queuedTotal++;
+        return STEP_MS;
+    }
+
+    private record Pick(String uri, boolean request) {}
+
+    private Pick nextTrack(String owner, Session s, String current) throws Exception {
+        if (s.includeRequests) {
+            for (RequestRecord r : queues.getValid(owner)) {
+                if (r.getUri() == null) continue;
+                String uri = UriUtils.canonicalTrackUri(r.getUri());
+                if (uri.equals(current) || s.queued.contains(uri)) continue;
+                return new Pick(uri, true);
+            }
+        }
+        if (s.playlistId == null) return null;
+        if (s.playlist == null) {
+            s.playlist = loadPlaylist(s.playlistId);
+            // Carry on from the playing track when it's from this playlist.
+            s.cursor = s.playlist.indexOf(current) + 1;
+        }
+        for (int tries = 0; tries < 2; tries++) {
+            while (s.cursor < s.playlist.size()) {
+                String uri = s.playlist.get(s.cursor++);
+                if (!uri.equals(current) && !s.queued.contains(uri)) return new Pick(uri, false);
+            }
+            // Wrapped: pick up any changes to the playlist for the next pass.
+            s.playlist = loadPlaylist(s.playlistId);
+            s.cursor = 0;
+        }
+        return null;
+    }
+
+    private List<String> loadPlaylist(String playlistId) throws Exception {
+        List<String> uris = new ArrayList<>();
+        spotifyService.forEachPlaylistTrackPage(playlistId, null, items -> {
+            for (PlaylistTrack item : items) {
+                if (item != null && item.getTrack() instanceof Track t && t.getUri() != null) {
+                    uris.add(UriUtils.canonicalTrackUri(t.getUri()));
+                }
+            }
+        });
+        return uris;
+    }
+}
@@ -0,0 +1,323 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.model.PlaybackStateDTO;
+import com.mydj.backend.util.UriUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import se.michaelthelin.spotify.model_objects.miscellaneous.CurrentlyPlayingContext;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds the latest playback state of the signed-in account. One background
+ * poller talks to Spotify, however many clients are watching; /playback is
+ * answered from memory and changes are pushed to SSE subscribers.
+ *
+ * <p>The poller only runs while someone is interested: an open stream, or a
+ * /playback read within the last {@code playback.idleAfterSeconds}. Its
+ * cadence follows the track: clients extrapolate progress themselves, so
+ * mid-track and while paused it polls rarely and backs off further while
+ * nothing changes, and it polls tightly around the predicted end of the track.
+ */
+@Service
+public class PlaybackStateService {
+
+    private static final long IDLE_CHECK_MS = 1_000L;
+    private static final long MIN_DELAY_MS = 500L;
+    private static final long END_WINDOW_MS = 5_000L;
+    private static final long MID_TRACK_BASE_MS = 5_000L;
+    private static final long MID_TRACK_MAX_MS = 20_000L;
+    private static final long PAUSED_BASE_MS = 5_000L;
+    private static final long PAUSED_MAX_MS = 30_000L;
+    private static final long MAX_STATE_AGE_MS = PAUSED_MAX_MS + 5_000L;
+    private static final long HEARTBEAT_MS = 15_000L;
+    private static final long POKE_DELAY_MS = 300L;
+    private static final long DRIFT_TOLERANCE_MS = 2_000L;
+
+    /** A fetched state, tagged with the account it belongs to. */
+    private record Snapshot(String owner, PlaybackStateDTO state) {}
+
+    private final SpotifyService spotifyService;
+    private final SpotifyCallScheduler callScheduler;
+    private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("playback-poller").daemon(true).factory());
+    private final LongAdder spotifyCalls = new LongAdder();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder pushes = new LongAdder();
+
+    @Value("${playback.idleAfterSeconds:30}") private int idleAfterSeconds;
+    @Value("${playback.streamTimeoutMinutes:30}") private long streamTimeoutMinutes;
+
+    private volatile Snapshot latest;
+    private volatile long lastReadMs;
+    private volatile int unchangedPolls;
+
+    public PlaybackStateService(SpotifyService spotifyService, SpotifyCallScheduler callScheduler) {
+        this.spotifyService = spotifyService;
+        this.callScheduler = callScheduler;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.schedule(this::tick, IDLE_CHECK_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_MS, HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        for (SseEmitter e : subscribers) e.complete();
+    }
+
+    // Reads
+
+    /**
+     * The current state with progress extrapolated to now, or null when there
+     * is no signed-in account to report on. Fetches synchronously only when
+     * the poller was idle, e.g. on the first read after a quiet spell.
+     */
+    public PlaybackStateDTO current() throws Exception {
+        reads.increment();
+        boolean wasIdle = !hasDemand();
+        lastReadMs = System.currentTimeMillis();
+        Snapshot s = latest;
+        if (s == null || wasIdle || isStale(s)) s = refresh();
+        return s == null ? null : extrapolate(s.state(), System.currentTimeMillis());
+    }
+
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(streamTimeoutMinutes));
+        emitter.onCompletion(() -> subscribers.remove(emitter));
+        emitter.onTimeout(() -> subscribers.remove(emitter));
+        emitter.onError(t -> subscribers.remove(emitter));
+        boolean wasIdle = !hasDemand();
+        subscribers.add(emitter);
+        // First event on the poller thread, so sends to one emitter never overlap.
+        scheduler.execute(() -> {
+            Snapshot s = latest;
+            if (s == null || wasIdle || isStale(s)) s = pollQuietly();
+            if (s != null) send(emitter, extrapolate(s.state(), System.currentTimeMillis()));
+            else comment(emitter, "waiting");
+        });
+        return emitter;
+    }
+
+    /** Asks for a prompt re-poll, e.g. right after a playback command. */
+    public void poke() {
+        scheduler.schedule(this::pollAndPublish, POKE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("subscribers", subscribers.size());
+        out.put("active", hasDemand());
+        out.put("reads", reads.sum());
+        out.put("spotifyCalls", spotifyCalls.sum());
+        out.put("pushes", pushes.sum());
+        out.put("unchangedPolls", unchangedPolls);
+        Snapshot s = latest;
+        out.put("owner", s == null ? null : s.owner());
+        out.put("stateAgeMs", s == null ? null : System.currentTimeMillis() - s.state().getTimestampMs());
+        return out;
+    }
+
+    // Polling
+
+    private void tick() {
+        long delay = IDLE_CHECK_MS;
+        try {
+            if (hasDemand()) {
+                pollAndPublish();
+                Snapshot s = latest;
+                delay = nextDelayMs(s == null ? null : s.state(), unchangedPolls, System.currentTimeMillis());
+            }
+        } finally {
+            if (!scheduler.isShutdown()) {
+                scheduler.schedule(this::tick, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * How long to wait before the next poll. Paused or stopped playback, and
+     * the middle of a track, back off up to 8x while polls keep coming back
+     * unchanged; the wait never runs past the start of the end window, and
+     * inside it the next poll lands just after the predicted track change.
+     */
+    static long nextDelayMs(PlaybackStateDTO s, int unchangedPolls, long nowMs) {
+        long backoff = 1L << Math.min(unchangedPolls, 3);
+        if (s == null || !s.isPlaying() || s.getDurationMs() <= 0) {
+            return Math.min(PAUSED_MAX_MS, PAUSED_BASE_MS * backoff);
+        }
+        long remaining = s.getDurationMs() - extrapolate(s, nowMs).getProgressMs();
+        if (remaining <= 0) {
+            // Past the predicted end and nothing changed yet: Spotify is lagging, keep checking.
+            return Math.min(END_WINDOW_MS, MIN_DELAY_MS * backoff);
+        }
+        if (remaining <= END_WINDOW_MS) {
+            return Math.max(MIN_DELAY_MS, remaining + MIN_DELAY_MS);
+        }
+        long relaxed = Math.min(MID_TRACK_MAX_MS, MID_TRACK_BASE_MS * backoff);
+        return Math.max(MIN_DELAY_MS, Math.min(relaxed, remaining - END_WINDOW_MS + MIN_DELAY_MS));
+    }
+
+    private boolean hasDemand() {
+        return !subscribers.isEmpty()
+            || System.currentTimeMillis() - lastReadMs < idleAfterSeconds * 1000L;
+    }
+
+    private boolean isStale(Snapshot s) {
+        return System.currentTimeMillis() - s.state().getTimestampMs() > MAX_STATE_AGE_MS;
+    }
+
+    private void pollAndPublish() {
+        Snapshot before = latest;
+        Snapshot after = pollQuietly();
+        boolean different = after != null && changed(before, after);
+        unchangedPolls = different ? 0 : unchangedPolls + 1;
+        if (different) {
+            for (SseEmitter e : subscribers) send(e, after.state());
+        } else if (after == null && before != null) {
+            // Signed out: clear what the clients are showing.
+            PlaybackStateDTO empty = new PlaybackStateDTO("", "", false, 0, 0, 0, null);
+            empty.setTimestampMs(System.currentTimeMillis());
+            for (SseEmitter e : subscribers) send(e, empty);
+        }
+    }
+
+    // Poller thread only; reads made for a waiting client stay in the caller's lane.
+    private Snapshot pollQuietly() {
+        try {
+            return callScheduler.run(SpotifyCallScheduler.Lane.BACKGROUND, this::refresh);
+        } catch (Exception e) {
+            System.err.println("Playback poll failed: " + e.getMessage());
+            return latest;
+        }
+    }
+
+    private synchronized Snapshot refresh() throws Exception {
+        // Another caller may have refreshed while we waited for the lock.
+        Snapshot s = latest;
+        if (s != null && System.currentTimeMillis() - s.state().getTimestampMs() < POKE_DELAY_MS) return s;
+
+        if (!spotifyService.hasUserAuth()) {
+            latest = null;
+            return null;
+        }
+        String owner = spotifyService.currentOwnerId();
+        spotifyCalls.increment();
+        CurrentlyPlayingContext ctx = spotifyService.getCurrentPlayback();
+        Snapshot next = new Snapshot(owner, toDto(ctx, System.currentTimeMillis()));
+        latest = next;
+        return next;
+    }
+
+    private boolean changed(Snapshot before, Snapshot after) {
+        if (before == null) return true;
+        if (!Objects.equals(before.owner(), after.owner())) return true;
+        PlaybackStateDTO a = before.state();
+        PlaybackStateDTO b = after.state();
+        if (!Objects.equals(a.getTrackUri(), b.getTrackUri())
+            || !Objects.equals(a.getTrackName(), b.getTrackName())
+            || a.isPlaying() != b.isPlaying()
+            || a.getVolumePercent() != b.getVolumePercent()
+            || !Objects.equals(a.getDeviceId(), b.getDeviceId())) {
+            return true;
+        }
+        // Same track: only a seek moves progress away from where the clock says it should be.
+        int expected = extrapolate(a, b.getTimestampMs()).getProgressMs();
+        return Math.abs(expected - b.getProgressMs()) > DRIFT_TOLERANCE_MS;
+    }
+
+    // SSE
+
+    private void send(SseEmitter emitter, PlaybackStateDTO state) {
+        try {
+            emitter.send(SseEmitter.event().name("playback").data(state, MediaType.APPLICATION_JSON));
+            pushes.increment();
+        } catch (Exception e) {
+            subscribers.remove(emitter);
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void heartbeat() {
+        for (SseEmitter e : subscribers) comment(e, "keepalive");
+    }
+
+    private void comment(SseEmitter emitter, String text) {
+        try {
+            emitter.send(SseEmitter.event().comment(text));
+        } catch (Exception e) {
+            subscribers.remove(emitter);
+            emitter.completeWithError(e);
+        }
+    }
+
+    // Mapping
+
+    private static PlaybackStateDTO extrapolate(PlaybackStateDTO s, long atMs) {
+        PlaybackStateDTO out = s.copy();
+        if (s.isPlaying()) {
+            long progressed = s.getProgressMs() + Math.max(0L, atMs - s.getTimestampMs());
+            out.setProgressMs((int) Math.min(progressed, Math.max(s.getDurationMs(), s.getProgressMs())));
+        }
+        out.setTimestampMs(atMs);
+        return out;
+    }
+
+    private PlaybackStateDTO toDto(CurrentlyPlayingContext ctx, long fetchedAtMs) {
+        PlaybackStateDTO dto;
+        if (ctx == null || ctx.getItem() == null) {
+            dto = new PlaybackStateDTO("", "", false, 0, 0, 0, spotifyService.getCurrentDeviceId());
+            dto.setTimestampMs(fetchedAtMs);
+            return dto;
+        }
+
+        boolean isPlaying = Boolean.TRUE.equals(ctx.getIs_playing());
+        int progressMs = ctx.getProgress_ms() != null ? ctx.getProgress_ms() : 0;
+        int volumePercent = ctx.getDevice() != null && ctx.getDevice().getVolume_percent() != null
+            ? ctx.getDevice().getVolume_percent() : 0;
+        String deviceId = ctx.getDevice() != null ? ctx.getDevice().getId() : spotifyService.getCurrentDeviceId();
+
+        String trackName = "";
+        String artistName = "";
+        int durationMs = 0;
+        String albumImageUrl = null;
+        String trackUri = null;
+
+        if (ctx.getItem() instanceof Track t) {
+            trackName = t.getName();
+            artistName = t.getArtists().length > 0 ? t.getArtists()[0].getName() : "";
+            durationMs = t.getDurationMs();
+            trackUri = t.getUri();
+
+            var images = (t.getAlbum() != null) ? t.getAlbum().getImages() : null;
+            if (images != null && images.length > 0) {
+                albumImageUrl = images[0].getUrl();
+            }
+        }
+
+        dto = new PlaybackStateDTO(trackName, artistName, isPlaying, progressMs, durationMs, volumePercent, deviceId);
+        dto.setAlbumImageUrl(albumImageUrl);
+        if (trackUri != null && !trackUri.isBlank()) {
+            dto.setTrackUri(UriUtils.canonicalTrackUri(trackUri));
+        }
+        dto.setTimestampMs(fetchedAtMs);
+        return dto;
+    }
+}
@@ -0,0 +1,142 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.util.UriUtils;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Playlist adds, gathered for a short window and sent to Spotify as one call
+ * per playlist (up to 100 tracks, Spotify's limit) in the order they came in.
+ * Tracks the playlist already holds are settled at once as duplicates, via
+ * {@link PlaylistMembership}, and never reach Spotify.
+ */
+@Service
+public class PlaylistAddCoalescer {
+
+    public enum Result { ADDED, DUPLICATE }
+
+    static final int MAX_URIS_PER_CALL = 100;
+
+    private record Pending(String uri, CompletableFuture<Result> done) {}
+
+    private final SpotifyService spotifyService;
+    private final PlaylistMembership membership;
+    private final long windowMs;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("playlist-adds").daemon(true).factory());
+
+    // guarded by this
+    private final Map<String, List<Pending>> buffers = new HashMap<>();
+
+    private final LongAdder added = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public PlaylistAddCoalescer(SpotifyService spotifyService, PlaylistMembership membership,
+                                @Value("${playlist.addWindowMs:50}") long windowMs) {
+        this.spotifyService = spotifyService;
+        this.membership = membership;
+        this.windowMs = Math.max(0, windowMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+    }
+
+    /** Queues one add; the future completes once Spotify has taken it, or fails with Spotify's error. */
+    public CompletableFuture<Result> add(String playlistId, String uri) {
+        return addAll(playlistId, List.of(uri)).get(0);
+    }
+
+    /** Queues the adds together and in order, so they share calls where they fit. */
+    public List<CompletableFuture<Result>> addAll(String playlistId, List<String> uris) {
+        List<CompletableFuture<Result>> out = new ArrayList<>(uris.size());
+        List<Pending> fresh = new ArrayList<>();
+        for (String uri : uris) {
+            String canonicalUri = UriUtils.canonicalTrackUri(uri);
+            CompletableFuture<Result> done;
+            try {
+                if (membership.claim(playlistId, canonicalUri)) {
+                    done = new CompletableFuture<>();
+                    fresh.add(new Pending(canonicalUri, done));
+                } else {
+                    duplicates.increment();
+                    done = CompletableFuture.completedFuture(Result.DUPLICATE);
+                }
+            } catch (Exception e) {
+                done = CompletableFuture.failedFuture(e);
+            }
+            out.add(done);
+        }
+        if (!fresh.isEmpty()) enqueue(playlistId, fresh);
+        return out;
+    }
+
+    private synchronized void enqueue(String playlistId, List<Pending> fresh) {
+        List<Pending> buffer = buffers.computeIfAbsent(playlistId, k -> new ArrayList<>());
+        boolean wasEmpty = buffer.isEmpty();
+        buffer.addAll(fresh);
+        if (buffer.size() >= MAX_URIS_PER_CALL) {
+            flusher.execute(() -> flush(playlistId));
+        } else if (wasEmpty) {
+            flusher.schedule(() -> flush(playlistId), windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // flusher thread only, so calls for a playlist reach Spotify in order
+    private void flush(String playlistId) {
+        List<Pending> batch;
+        synchronized (this) {
+            List<Pending> buffer = buffers.get(playlistId);
+            if (buffer == null || buffer.isEmpty()) return;
+            int n = Math.min(buffer.size(), MAX_URIS_PER_CALL);
+            batch = new ArrayList<>(buffer.subList(0, n));
+            buffer.subList(0, n).clear();
+            if (buffer.isEmpty()) buffers.remove(playlistId);
+            else flusher.execute(() -> flush(playlistId));
+        }
+        List<String> uris = new ArrayList<>(batch.size());
+        for (Pending p : batch) uris.add(p.uri());
+        calls.increment();
+        try {
+            membership.added(playlistId, spotifyService.addTracksToPlaylist(playlistId, uris));
+            added.add(batch.size());
+            for (Pending p : batch) p.done().complete(Result.ADDED);
+        } catch (Exception e) {
+            failed.add(batch.size());
+            for (Pending p : batch) {
+                membership.release(playlistId, p.uri());
+                p.done().completeExceptionally(e);
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("windowMs", windowMs);
+        out.put("added", added.sum());
+        out.put("duplicates", duplicates.sum());
+        out.put("failed", failed.sum());
+        out.put("spotifyCalls", calls.sum());
+        synchronized (this) {
+            int pending = 0;
+            for (List<Pending> b : buffers.values()) pending += b.size();
+            out.put("pending", pending);
+        }
+        return out;
+    }
+}
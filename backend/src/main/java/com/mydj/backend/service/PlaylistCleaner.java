@@ -0,0 +1,143 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.util.UriUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Empties a playlist of any size: every page is read, and the distinct tracks
+ * are removed 100 at a time with up to {@code playlist.clearConcurrency}
+ * removals in flight. Each removal names whole tracks, so every occurrence
+ * goes at once and the chunks don't depend on each other's order.
+ */
+@Service
+public class PlaylistCleaner {
+
+    static final int MAX_URIS_PER_CALL = 100;
+
+    /** Progress callbacks, made on the thread running {@link #clear}. */
+    public interface Progress {
+        void read(int tracks);
+        void removed(int done, int total);
+    }
+
+    private final SpotifyService spotifyService;
+    private final PlaylistMembership membership;
+    private final SpotifyCallScheduler callScheduler;
+    private final ExecutorService streams = Executors.newSingleThreadExecutor(
+        Thread.ofPlatform().name("playlist-clear").daemon(true).factory());
+    private ExecutorService removers;
+
+    @Value("${playlist.clearConcurrency:4}") private int concurrency;
+
+    public PlaylistCleaner(SpotifyService spotifyService, PlaylistMembership membership,
+                           SpotifyCallScheduler callScheduler) {
+        this.spotifyService = spotifyService;
+        this.membership = membership;
+        this.callScheduler = callScheduler;
+    }
+
+    @PostConstruct
+    public void start() {
+        removers = Executors.newFixedThreadPool(Math.max(1, concurrency),
+            Thread.ofPlatform().name("playlist-remove-", 0).daemon(true).factory());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        streams.shutdownNow();
+        removers.shutdownNow();
+    }
+
+    /** Removes every track; returns how many distinct tracks were removed. */
+    public int clear(String playlistId, Progress progress) throws Exception {
+        String snapshotId = spotifyService.getPlaylistSnapshotId(playlistId);
+        Set<String> uris = new LinkedHashSet<>();
+        spotifyService.forEachPlaylistTrackPage(playlistId, null, items -> {
+            for (PlaylistTrack item : items) {
+                if (item != null && item.getTrack() instanceof Track t && t.getUri() != null) {
+                    uris.add(UriUtils.canonicalTrackUri(t.getUri()));
+                }
+            }
+            progress.read(uris.size());
+        });
+        if (uris.isEmpty()) return 0;
+
+        List<String> all = new ArrayList<>(uris);
+        SpotifyCallScheduler.Lane lane = callScheduler.currentLane();
+        ExecutorCompletionService<List<String>> done = new ExecutorCompletionService<>(removers);
+        List<Future<List<String>>> chunks = new ArrayList<>();
+        for (int i = 0; i < all.size(); i += MAX_URIS_PER_CALL) {
+            List<String> chunk = all.subList(i, Math.min(all.size(), i + MAX_URIS_PER_CALL));
+            chunks.add(done.submit(() -> callScheduler.run(lane, () -> {
+                membership.removed(playlistId, spotifyService.removeTracksFromPlaylist(playlistId, chunk, snapshotId), chunk);
+                return chunk;
+            })));
+        }
+        int removed = 0;
+        try {
+            for (int n = 0; n < chunks.size(); n++) {
+                try {
+                    removed += done.take().get().size();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception cause) throw cause;
+                    throw e;
+                }
+                progress.removed(removed, all.size());
+            }
+        } finally {
+            for (Future<List<String>> f : chunks) f.cancel(true);
+        }
+        return removed;
+    }
+
+    /** Clears in the background, reporting progress as server-sent events. */
+    public SseEmitter clearWithProgress(String playlistId) {
+        SseEmitter emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(10));
+        streams.execute(() -> {
+            try {
+                int removed = clear(playlistId, new Progress() {
+                    @Override public void read(int tracks) {
+                        send(emitter, "read", Map.of("tracks", tracks));
+                    }
+                    @Override public void removed(int done, int total) {
+                        send(emitter, "removed", Map.of("done", done, "total", total));
+                    }
+                });
+                send(emitter, "done", Map.of("removed", removed));
+                emitter.complete();
+            } catch (Exception e) {
+                System.err.println("Clearing playlist " + playlistId + " failed: " + e.getMessage());
+                send(emitter, "error", Map.of("error", e.getMessage() == null ? "unknown" : e.getMessage()));
+                emitter.complete();
+            }
+        });
+        return emitter;
+    }
+
+    private static void send(SseEmitter emitter, String name, Map<String, Object> data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(new LinkedHashMap<>(data)));
+        } catch (Exception e) {
+            // the client went away; the clear itself carries on
+        }
+    }
+}
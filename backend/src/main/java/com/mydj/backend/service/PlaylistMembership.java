@@ -0,0 +1,217 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.util.SingleFlight;
+import com.mydj.backend.util.UriUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Which tracks each playlist holds, so adding a track that is already there
+ * is refused without asking Spotify. A playlist is read once, the first time
+ * something is added to it; after that the set follows our own adds and
+ * removals, and is replaced whenever the playlist is read in full again.
+ * Edits made outside the app only show in the snapshot id, so before a
+ * refusal is trusted the id is checked, at most once per
+ * {@code playlist.membershipCheckSeconds}, and the playlist re-read when it
+ * moved.
+ *
+ * <p>A full read can overlap our own adds and removals. Each of those is
+ * stamped from one clock, and when a read lands, the changes stamped after it
+ * began are replayed onto what it found.
+ */
+@Service
+public class PlaylistMembership {
+
+    /** One of our own changes: the track claimed or added (present), or released or removed. */
+    private record Change(long at, boolean present) {}
+
+    private static final class Members {
+        final Set<String> uris = ConcurrentHashMap.newKeySet();
+        // Our changes since the set was read, newest per track; guarded by this.
+        final Map<String, Change> changes = new HashMap<>();
+        volatile String snapshotId;
+        volatile long checkedAtMs = System.currentTimeMillis();
+        // Set once a newer read took over; changes go to its set instead. Guarded by this.
+        boolean retired;
+
+        Members(String snapshotId, Collection<String> uris) {
+            this.snapshotId = snapshotId;
+            this.uris.addAll(uris);
+        }
+    }
+
+    private final SpotifyService spotifyService;
+    private final Map<String, Members> playlists = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final SingleFlight<String, Members> loads = new SingleFlight<>();
+    private final long checkEveryMs;
+
+    private final LongAdder duplicatesRejected = new LongAdder();
+    private final LongAdder loadsDone = new LongAdder();
+    private final LongAdder staleReloads = new LongAdder();
+
+    public PlaylistMembership(SpotifyService spotifyService,
+                              @Value("${playlist.membershipCheckSeconds:30}") long checkSeconds) {
+        this.spotifyService = spotifyService;
+        this.checkEveryMs = Math.max(0, checkSeconds) * 1000L;
+    }
+
+    /**
+     * Claims the track for an add: false when the playlist already has it or
+     * another add of it is under way. A claimed add that fails must be
+     * handed back with {@link #release}.
+     */
+    public boolean claim(String playlistId, String uri) throws Exception {
+        String canonical = UriUtils.canonicalTrackUri(uri);
+        Members m = members(playlistId);
+        Boolean claimed = change(m, canonical, true);
+        if (claimed == null) return claim(playlistId, uri); // replaced meanwhile
+        if (!claimed && isStale(playlistId, m)) claimed = change(members(playlistId), canonical, true);
+        if (claimed == null) return claim(playlistId, uri);
+        if (!claimed) duplicatesRejected.increment();
+        return claimed;
+    }
+
+    /** Whether the set changed; null when the set was retired and the caller must look again. */
+    private Boolean change(Members m, String canonicalUri, boolean present) {
+        synchronized (m) {
+            if (m.retired) return null;
+            boolean changed = present ? m.uris.add(canonicalUri) : m.uris.remove(canonicalUri);
+            if (changed) m.changes.put(canonicalUri, new Change(clock.incrementAndGet(), present));
+            return changed;
+        }
+    }
+
+    /** Checks the snapshot id if it hasn't been lately; re-reads the playlist when it moved. */
+    private boolean isStale(String playlistId, Members m) {
+        long now = System.currentTimeMillis();
+        if (now - m.checkedAtMs < checkEveryMs) return false;
+        m.checkedAtMs = now;
+        try {
+            String snapshotId = spotifyService.getPlaylistSnapshotId(playlistId);
+            if (snapshotId != null && snapshotId.equals(m.snapshotId)) return false;
+            loads.run(playlistId, () -> {
+                Members current = playlists.get(playlistId);
+                // Someone else already re-read it since we looked.
+                if (current != m) return current;
+                staleReloads.increment();
+                return load(playlistId);
+            });
+            return true;
+        } catch (Exception e) {
+            System.err.println("Playlist snapshot check failed for " + playlistId + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public void release(String playlistId, String uri) {
+        forget(playlistId, UriUtils.canonicalTrackUri(uri));
+    }
+
+    private void forget(String playlistId, String canonicalUri) {
+        while (true) {
+            Members m = playlists.get(playlistId);
+            if (m == null || change(m, canonicalUri, false) != null) return;
+        }
+    }
+
+    /** Our own add went through; the playlist is now at this snapshot. */
+    public void added(String playlistId, String snapshotId) {
+        Members m = playlists.get(playlistId);
+        if (m != null && snapshotId != null) m.snapshotId = snapshotId;
+    }
+
+    /** Our own removal went through. */
+    public void removed(String playlistId, String snapshotId, Collection<String> uris) {
+        for (String uri : uris) forget(playlistId, UriUtils.canonicalTrackUri(uri));
+        Members m = playlists.get(playlistId);
+        if (m != null && snapshotId != null) m.snapshotId = snapshotId;
+    }
+
+    /** Take before starting a full read of a playlist, and hand to {@link #replace} with its result. */
+    public long readStarted() {
+        return clock.get();
+    }
+
+    /**
+     * The playlist was just read in full at this snapshot, in a read begun at
+     * {@code readStartedAt}. Taken even at the id we hold: the id stored after
+     * our own edit may already include someone else's.
+     */
+    public void replace(String playlistId, String snapshotId, Collection<String> uris, long readStartedAt) {
+        install(playlistId, new Members(snapshotId, uris), readStartedAt);
+    }
+
+    // Our changes the read may have missed are replayed onto it, and kept for any older read still running.
+    private void install(String playlistId, Members next, long readStartedAt) {
+        while (true) {
+            Members current = playlists.get(playlistId);
+            if (current == null) {
+                if (playlists.putIfAbsent(playlistId, next) == null) return;
+                continue;
+            }
+            synchronized (current) {
+                if (current.retired) continue;
+                current.changes.forEach((uri, c) -> {
+                    if (c.at() <= readStartedAt) return;
+                    if (c.present()) next.uris.add(uri); else next.uris.remove(uri);
+                    next.changes.put(uri, c);
+                });
+                current.retired = true;
+                playlists.put(playlistId, next);
+                return;
+            }
+        }
+    }
+
+    private Members members(String playlistId) throws Exception {
+        Members m = playlists.get(playlistId);
+        if (m != null) return m;
+        return loads.run(playlistId, () -> {
+            Members again = playlists.get(playlistId);
+            if (again != null) return again;
+            load(playlistId);
+            return playlists.get(playlistId);
+        });
+    }
+
+    private Members load(String playlistId) throws Exception {
+        long readStartedAt = readStarted();
+        String snapshotId = spotifyService.getPlaylistSnapshotId(playlistId);
+        Set<String> uris = new HashSet<>();
+        spotifyService.forEachPlaylistTrackPage(playlistId, null, items -> {
+            for (PlaylistTrack item : items) {
+                if (item != null && item.getTrack() instanceof Track t && t.getUri() != null) {
+                    uris.add(UriUtils.canonicalTrackUri(t.getUri()));
+                }
+            }
+        });
+        loadsDone.increment();
+        install(playlistId, new Members(snapshotId, uris), readStartedAt);
+        return playlists.get(playlistId);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        int tracks = 0;
+        for (Members m : playlists.values()) tracks += m.uris.size();
+        out.put("playlists", playlists.size());
+        out.put("tracks", tracks);
+        out.put("loads", loadsDone.sum());
+        out.put("staleReloads", staleReloads.sum());
+        out.put("duplicatesRejected", duplicatesRejected.sum());
+        return out;
+    }
+}
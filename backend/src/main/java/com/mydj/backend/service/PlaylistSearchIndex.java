@@ -0,0 +1,322 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.util.UriUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import se.michaelthelin.spotify.model_objects.specification.Artist;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+import se.michaelthelin.spotify.model_objects.specification.Image;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistSimplified;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory full-text index over the tracks in the signed-in account's
+ * playlists, so guest searches for songs the DJ already has are answered
+ * locally. Words of the title and artist are indexed with their leading
+ * n-grams, so a partly typed word matches too.
+ *
+ * <p>A background refresh lists the playlists and re-reads only those whose
+ * snapshot id changed; the index itself is rebuilt as an immutable value and
+ * swapped in, so searches never wait on a refresh.
+ */
+@Service
+public class PlaylistSearchIndex {
+
+    private static final int MAX_GRAM = 10;
+    private static final long FIRST_REFRESH_DELAY_MS = 10_000L;
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    /** One indexed track. */
+    record Doc(String uri, String name, String artist, String artistId, String imageUrl) {}
+
+    private record IndexedPlaylist(String snapshotId, List<Doc> docs) {}
+
+    /** An immutable inverted index: word n-gram to ascending doc positions. */
+    static final class Index {
+        static final Index EMPTY = build(List.of());
+
+        private final Doc[] docs;
+        private final String[][] words;
+        private final Map<String, int[]> postings;
+
+        private Index(Doc[] docs, String[][] words, Map<String, int[]> postings) {
+            this.docs = docs;
+            this.words = words;
+            this.postings = postings;
+        }
+
+        static Index build(Collection<Doc> input) {
+            Doc[] docs = input.toArray(new Doc[0]);
+            String[][] words = new String[docs.length][];
+            Map<String, int[]> lists = new HashMap<>();
+            Map<String, Integer> sizes = new HashMap<>();
+            Set<String> keys = new HashSet<>();
+            for (int i = 0; i < docs.length; i++) {
+                words[i] = words(docs[i].name() + " " + docs[i].artist());
+                keys.clear();
+                for (String w : words[i]) {
+                    for (int k = 1; k <= Math.min(w.length(), MAX_GRAM); k++) keys.add(w.substring(0, k));
+                }
+                for (String key : keys) {
+                    int n = sizes.merge(key, 1, Integer::sum);
+                    int[] list = lists.get(key);
+                    if (list == null) lists.put(key, list = new int[4]);
+                    else if (n > list.length) lists.put(key, list = Arrays.copyOf(list, list.length * 2));
+                    list[n - 1] = i;
+                }
+            }
+            Map<String, int[]> postings = new HashMap<>(lists.size() * 2);
+            lists.forEach((key, list) -> postings.put(key, Arrays.copyOf(list, sizes.get(key))));
+            return new Index(docs, words, postings);
+        }
+
+        int size() {
+            return docs.length;
+        }
+
+        /** Docs containing every query word as a word prefix, best matches first. */
+        List<Doc> search(String query, int limit) {
+            String[] tokens = words(query);
+            if (tokens.length == 0 || docs.length == 0) return List.of();
+            int[][] lists = new int[tokens.length][];
+            for (int t = 0; t < tokens.length; t++) {
+                String key = tokens[t].length() > MAX_GRAM ? tokens[t].substring(0, MAX_GRAM) : tokens[t];
+                lists[t] = postings.get(key);
+                if (lists[t] == null) return List.of();
+            }
+            Arrays.sort(lists, Comparator.comparingInt(l -> l.length));
+            int[] candidates = lists[0];
+            for (int t = 1; t < lists.length && candidates.length > 0; t++) candidates = intersect(candidates, lists[t]);
+
+            List<int[]> scored = new ArrayList<>();
+            for (int doc : candidates) {
+                int score = score(words[doc], tokens);
+                if (score >= 0) scored.add(new int[] { doc, score });
+            }
+            // Higher score first, then playlist order.
+            scored.sort((a, b) -> a[1] != b[1] ? Integer.compare(b[1], a[1]) : Integer.compare(a[0], b[0]));
+            List<Doc> out = new ArrayList<>(Math.min(limit, scored.size()));
+            for (int i = 0; i < scored.size() && out.size() < limit; i++) out.add(docs[scored.get(i)[0]]);
+            return out;
+        }
+
+        // -1 when a token longer than the indexed n-grams doesn't actually match
+        private static int score(String[] docWords, String[] tokens) {
+            int score = 0;
+            for (String token : tokens) {
+                int best = -1;
+                for (String w : docWords) {
+                    if (w.equals(token)) { best = 2; break; }
+                    if (w.startsWith(token)) best = 1;
+                }
+                if (best < 0) return -1;
+                score += best;
+            }
+            if (docWords.length > 0 && docWords[0].startsWith(tokens[0])) score++;
+            return score;
+        }
+
+        private static int[] intersect(int[] a, int[] b) {
+            int[] out = new int[Math.min(a.length, b.length)];
+            int i = 0, j = 0, n = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) i++;
+                else if (a[i] > b[j]) j++;
+                else { out[n++] = a[i]; i++; j++; }
+            }
+            return Arrays.copyOf(out, n);
+        }
+    }
+
+    /** Lower-cased, accent-free words. */
+    static String[] words(String text) {
+        if (text == null || text.isBlank()) return new String[0];
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return Arrays.stream(NON_WORD.split(folded.toLowerCase(Locale.ROOT)))
+            .filter(w -> !w.isEmpty())
+            .toArray(String[]::new);
+    }
+
+    private final SpotifyService spotifyService;
+    private final SpotifyMetadataCache metadataCache;
+    private final SpotifyCallScheduler callScheduler;
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("playlist-indexer").daemon(true).factory());
+
+    @Value("${playlistIndex.enabled:true}") private boolean enabled;
+    @Value("${playlistIndex.refreshMinutes:5}") private long refreshMinutes;
+
+    // refresher thread only
+    private final Map<String, IndexedPlaylist> playlists = new HashMap<>();
+    private String indexedOwner;
+
+    private volatile Index index = Index.EMPTY;
+    private volatile long refreshedAtMs;
+    private volatile int playlistCount;
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder playlistsFetched = new LongAdder();
+    private final LongAdder playlistsSkipped = new LongAdder();
+
+    public PlaylistSearchIndex(SpotifyService spotifyService, SpotifyMetadataCache metadataCache,
+                               SpotifyCallScheduler callScheduler) {
+        this.spotifyService = spotifyService;
+        this.metadataCache = metadataCache;
+        this.callScheduler = callScheduler;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        refresher.scheduleWithFixedDelay(this::refreshQuietly,
+            FIRST_REFRESH_DELAY_MS, TimeUnit.MINUTES.toMillis(refreshMinutes), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /** Asks for a refresh soon, e.g. after the DJ changed a playlist. */
+    public void requestRefresh() {
+        if (enabled) refresher.execute(this::refreshQuietly);
+    }
+
+    // Search
+
+    /** Rows in the same shape as SpotifyService.searchTrackSummaries. */
+    public List<Map<String, String>> search(String query, int limit) {
+        searches.increment();
+        List<Map<String, String>> out = new ArrayList<>();
+        for (Doc d : index.search(query, limit)) {
+            Map<String, String> row = new HashMap<>();
+            row.put("name", d.name());
+            row.put("artist", d.artist());
+            row.put("genre", genreOf(d.artistId()));
+            row.put("uri", d.uri());
+            if (d.imageUrl() != null) row.put("imageUrl", d.imageUrl());
+            out.add(row);
+        }
+        return out;
+    }
+
+    private String genreOf(String artistId) {
+        Artist a = artistId == null ? null : metadataCache.getArtist(artistId);
+        return a != null && a.getGenres() != null && a.getGenres().length > 0 ? a.getGenres()[0] : "unknown";
+    }
+
+    // Refresh
+
+    private void refreshQuietly() {
+        try {
+            callScheduler.run(SpotifyCallScheduler.Lane.BACKGROUND, () -> {
+                refresh();
+                return null;
+            });
+        } catch (Exception e) {
+            System.err.println("Playlist index refresh failed: " + e.getMessage());
+        }
+    }
+
+    void refresh() throws Exception {
+        if (!spotifyService.hasUserAuth()) {
+            playlists.clear();
+            indexedOwner = null;
+            index = Index.EMPTY;
+            playlistCount = 0;
+            return;
+        }
+        String owner = spotifyService.currentOwnerId();
+        if (!Objects.equals(owner, indexedOwner)) {
+            // Another account's tracks must not outlive the login, even if this pass fails.
+            playlists.clear();
+            indexedOwner = owner;
+            index = Index.EMPTY;
+            playlistCount = 0;
+        }
+
+        List<PlaylistSimplified> listed = spotifyService.getAllCurrentUserPlaylists();
+        Set<String> seen = new HashSet<>();
+        for (PlaylistSimplified p : listed) {
+            if (p != null && p.getId() != null) seen.add(p.getId());
+        }
+        boolean changed = playlists.keySet().retainAll(seen);
+        try {
+            for (PlaylistSimplified p : listed) {
+                if (p == null || p.getId() == null) continue;
+                IndexedPlaylist current = playlists.get(p.getId());
+                if (current != null && Objects.equals(current.snapshotId(), p.getSnapshotId())) {
+                    playlistsSkipped.increment();
+                    continue;
+                }
+                playlists.put(p.getId(), new IndexedPlaylist(p.getSnapshotId(), fetchDocs(p.getId())));
+                playlistsFetched.increment();
+                changed = true;
+            }
+            refreshedAtMs = System.currentTimeMillis();
+        } finally {
+            // What was stored before a failure is searchable now, not after some later pass that changes something.
+            if (changed) {
+                Map<String, Doc> byUri = new LinkedHashMap<>();
+                for (IndexedPlaylist p : playlists.values()) {
+                    for (Doc d : p.docs()) byUri.putIfAbsent(d.uri(), d);
+                }
+                index = Index.build(byUri.values());
+            }
+            playlistCount = playlists.size();
+        }
+    }
+
+    private List<Doc> fetchDocs(String playlistId) throws Exception {
+        List<Doc> docs = new ArrayList<>();
+        spotifyService.forEachPlaylistTrackPage(playlistId, null, items -> {
+            for (PlaylistTrack item : items) {
+                if (item != null && item.getTrack() instanceof Track t && t.getUri() != null) docs.add(toDoc(t));
+            }
+        });
+        return docs;
+    }
+
+    private static Doc toDoc(Track t) {
+        ArtistSimplified first = t.getArtists() != null && t.getArtists().length > 0 ? t.getArtists()[0] : null;
+        String imageUrl = null;
+        Image[] images = t.getAlbum() != null ? t.getAlbum().getImages() : null;
+        if (images != null && images.length > 0) imageUrl = images[images.length - 1].getUrl();
+        return new Doc(UriUtils.canonicalTrackUri(t.getUri()), t.getName(),
+            first == null ? "" : first.getName(), first == null ? null : first.getId(), imageUrl);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", enabled);
+        out.put("tracks", index.size());
+        out.put("playlists", playlistCount);
+        out.put("refreshedAtMs", refreshedAtMs);
+        out.put("playlistsFetched", playlistsFetched.sum());
+        out.put("playlistsSkipped", playlistsSkipped.sum());
+        out.put("searches", searches.sum());
+        return out;
+    }
+}
@@ -0,0 +1,84 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.util.TtlCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The encoded track list of recently viewed playlists, each tagged with the
+ * Spotify snapshot id it was read at. Spotify gives a playlist a new snapshot
+ * id on every change, so an entry stays good for as long as the id matches
+ * and the playlist never has to be re-read just to find out it is the same.
+ * Entries are kept only up to {@code playlistCache.maxEntryKb} each, which
+ * bounds the cache at maxEntries times that; longer playlists are re-read.
+ */
+@Component
+public class PlaylistTrackCache {
+
+    private record Entry(String snapshotId, byte[] json) {}
+
+    private final TtlCache<String, Entry> entries;
+    private final int maxEntryBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder tooLarge = new LongAdder();
+
+    public PlaylistTrackCache(@Value("${playlistCache.maxEntries:20}") int maxEntries,
+                              @Value("${playlistCache.ttlMinutes:60}") long ttlMinutes,
+                              @Value("${playlistCache.maxEntryKb:512}") int maxEntryKb) {
+        this.entries = new TtlCache<>(maxEntries, ttlMinutes * 60_000L);
+        this.maxEntryBytes = Math.max(1, maxEntryKb) * 1024;
+    }
+
+    /** Responses longer than this are not kept, so there is no point copying them. */
+    public int maxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /** The JSON last stored for the playlist if it was read at this snapshot, else null. */
+    public byte[] get(String playlistId, String snapshotId) {
+        Entry e = entries.get(playlistId);
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        if (snapshotId == null || !Objects.equals(e.snapshotId(), snapshotId)) {
+            stale.increment();
+            return null;
+        }
+        hits.increment();
+        return e.json();
+    }
+
+    /** Call with null when the response outgrew {@link #maxEntryBytes()}; any older entry is dropped. */
+    public void put(String playlistId, String snapshotId, byte[] json) {
+        if (playlistId == null || snapshotId == null) return;
+        if (json == null || json.length > maxEntryBytes) {
+            tooLarge.increment();
+            entries.invalidate(playlistId);
+            return;
+        }
+        entries.put(playlistId, new Entry(snapshotId, json));
+    }
+
+    public void flush() {
+        entries.invalidateAll();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("size", entries.size());
+        out.put("hits", hits.sum());
+        out.put("stale", stale.sum());
+        out.put("misses", misses.sum());
+        out.put("tooLarge", tooLarge.sum());
+        out.put("maxEntryBytes", maxEntryBytes);
+        return out;
+    }
+}
@@ -1,6 +1,7 @@
 package com.mydj.backend.service;
 
 import com.mydj.backend.model.RequestRecord;
+import jakarta.annotation.PostConstruct;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
@@ -18,17 +19,42 @@ public class RequestClassificationService {
     }
 
     private final Map<String, OwnerConfig> byOwner = new ConcurrentHashMap<>();
+    private final RequestJournal journal;
+
+    public RequestClassificationService(RequestJournal journal) {
+        this.journal = journal;
+    }
+
+    @PostConstruct
+    public void restore() {
+        journal.recoveredSettings().forEach((owner, s) -> {
+            OwnerConfig c = cfg(owner);
+            c.allowExplicit = s.allowExplicit();
+            c.allowedGenres.addAll(s.allowedGenres());
+        });
+    }
 
     private OwnerConfig cfg(String owner) {
         return byOwner.computeIfAbsent(owner == null ? GLOBAL : owner, k -> new OwnerConfig());
     }
 
+    private void journalSettings(String owner, OwnerConfig c) {
+        String key = owner == null ? GLOBAL : owner;
+        if (!journal.settingsChanged(key, c.allowExplicit, c.allowedGenres)) {
+            System.err.println("Request journal has not persisted settings for " + key + " yet");
+        }
+    }
+
     public boolean isAllowExplicit(String owner) { 
         return cfg(owner).allowExplicit; 
     }
 
     public void setAllowExplicit(String owner, boolean allow) { 
-        cfg(owner).allowExplicit = allow; 
+        OwnerConfig c = cfg(owner);
+        synchronized (c) {
+            c.allowExplicit = allow;
+            journalSettings(owner, c);
+        }
     }
 
     public List<String> getAllowedGenres(String owner) {
@@ -37,12 +63,16 @@ public class RequestClassificationService {
 
     public void setAllowedGenres(String owner, Collection<String> genres) {
         OwnerConfig c = cfg(owner);
-        c.allowedGenres.clear();
-        if (genres == null) return;
-        for (String g : genres) {
-            if (g == null) continue;
-            String norm = g.toLowerCase(Locale.ROOT).trim();
-            if (!norm.isEmpty()) c.allowedGenres.add(norm);
+        synchronized (c) {
+            c.allowedGenres.clear();
+            if (genres != null) {
+                for (String g : genres) {
+                    if (g == null) continue;
+                    String norm = g.toLowerCase(Locale.ROOT).trim();
+                    if (!norm.isEmpty()) c.allowedGenres.add(norm);
+                }
+            }
+            journalSettings(owner, c);
         }
     }
 
@@ -94,7 +124,15 @@ public class RequestClassificationService {
         boolean allowExplicit = cfg(owner).allowExplicit;
         boolean valid = (!filterActive || matched != null) && (allowExplicit || !explicit);
 
-        return new RequestRecord(title, artist, displayGenre, explicit, uri, valid);
+        return new RequestRecord(title, artist, displayGenre, explicit, uri, valid, artistGenres);
+    }
+
+    /**
+     * Re-runs classification against the owner's current settings using only
+     * what the record already carries, so it needs no Spotify lookups.
+     */
+    public RequestRecord reclassify(String owner, RequestRecord r) {
+        return classify(owner, r.getTitle(), r.getArtist(), r.getArtistGenres(), r.isExplicit(), r.getUri());
     }
 
 
@@ -0,0 +1,255 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.model.RequestRecord;
+import com.mydj.backend.util.TtlCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Takes guest requests off the web threads. Submissions go into a bounded
+ * queue and a small worker pool fetches the track and artist genres from
+ * Spotify, classifies the request and adds it to the owner's queue. When the
+ * queue is full a submission is refused straight away, with an estimate of
+ * when to retry, instead of piling up behind Spotify. Repeat submissions of a
+ * song that is still being processed get the ticket already in flight.
+ */
+@Service
+public class RequestIngestionService {
+
+    public enum Status { QUEUED, PROCESSING, ADDED, DUPLICATE, FAILED }
+
+    /** One submission and how far it has got; kept for a while so guests can look it up. */
+    public static final class Ticket {
+        private final String id;
+        private final String owner;
+        private final String uri;
+        private final long createdMs = System.currentTimeMillis();
+        private volatile Status status;
+        private volatile String message;
+
+        Ticket(String id, String owner, String uri, Status status) {
+            this.id = id;
+            this.owner = owner;
+            this.uri = uri;
+            this.status = status;
+        }
+
+        public String id() { return id; }
+        public String owner() { return owner; }
+        public String uri() { return uri; }
+        public Status status() { return status; }
+        public String message() { return message; }
+        public boolean done() { return status != Status.QUEUED && status != Status.PROCESSING; }
+
+        void finish(Status status, String message) {
+            this.message = message;
+            this.status = status;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("id", id);
+            m.put("uri", uri);
+            m.put("status", status.name().toLowerCase());
+            if (message != null) m.put("message", message);
+            m.put("createdMs", createdMs);
+            return m;
+        }
+    }
+
+    /** Thrown when the ingestion queue is full; carries a suggested wait. */
+    public static class BusyException extends Exception {
+        private final int retryAfterSeconds;
+
+        public BusyException(int retryAfterSeconds) {
+            super("ingestion queue full");
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int retryAfterSeconds() { return retryAfterSeconds; }
+    }
+
+    private static final double EWMA_WEIGHT = 0.2;
+    private static final int MAX_RETRY_AFTER_SECONDS = 60;
+
+    private final SpotifyService spotifyService;
+    private final RequestClassificationService classificationService;
+    private final RequestQueueService queues;
+    private final SpotifyCallScheduler callScheduler;
+
+    @Value("${ingest.workers:4}") private int workers;
+    @Value("${ingest.queueCapacity:500}") private int queueCapacity;
+    @Value("${ingest.statusTtlMinutes:15}") private long statusTtlMinutes;
+
+    private ThreadPoolExecutor pool;
+    private TtlCache<String, Ticket> tickets;
+    private final ConcurrentMap<String, Ticket> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder added = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    // The average's double bits, so workers can update it with a CAS.
+    private final AtomicLong avgProcessingMs = new AtomicLong(Double.doubleToLongBits(250));
+
+    public RequestIngestionService(SpotifyService spotifyService,
+                                   RequestClassificationService classificationService,
+                                   RequestQueueService queues,
+                                   SpotifyCallScheduler callScheduler) {
+        this.spotifyService = spotifyService;
+        this.classificationService = classificationService;
+        this.queues = queues;
+        this.callScheduler = callScheduler;
+    }
+
+    @PostConstruct
+    public void start() {
+        int n = Math.max(1, workers);
+        pool = new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+            Thread.ofPlatform().name("request-ingest-", 0).daemon(true).factory(),
+            new ThreadPoolExecutor.AbortPolicy());
+        tickets = new TtlCache<>(Math.max(1_000, queueCapacity * 4), TimeUnit.MINUTES.toMillis(statusTtlMinutes));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Accepts a request for later processing. A URI already in the owner's
+     * queue is answered at once as a duplicate without queueing any work.
+     */
+    public Ticket submit(String owner, String canonicalUri) throws BusyException {
+        Ticket t = new Ticket(UUID.randomUUID().toString(), owner, canonicalUri, Status.QUEUED);
+        if (queues.containsUri(owner, canonicalUri)) {
+            t.finish(Status.DUPLICATE, "Track already requested");
+            duplicates.increment();
+            tickets.put(t.id(), t);
+            return t;
+        }
+        // Guests asking for the same song while it is being looked up share one ticket.
+        String key = owner + "|" + canonicalUri;
+        Ticket running = pending.putIfAbsent(key, t);
+        if (running != null) {
+            coalesced.increment();
+            return running;
+        }
+        tickets.put(t.id(), t);
+        try {
+            pool.execute(() -> {
+                try {
+                    callScheduler.run(SpotifyCallScheduler.Lane.ENRICHMENT, () -> {
+                        process(t);
+                        return null;
+                    });
+                } catch (Exception e) {
+                    System.err.println("Request ingestion failed for " + t.uri() + ": " + e.getMessage());
+                } finally {
+                    pending.remove(key, t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(key, t);
+            tickets.invalidate(t.id());
+            rejected.increment();
+            throw new BusyException(retryAfterSeconds());
+        }
+        accepted.increment();
+        return t;
+    }
+
+    public Ticket status(String id) {
+        return tickets.get(id);
+    }
+
+    private void process(Ticket t) {
+        long started = System.nanoTime();
+        t.status = Status.PROCESSING;
+        try {
+            if (queues.containsUri(t.owner(), t.uri())) {
+                t.finish(Status.DUPLICATE, "Track already requested");
+                duplicates.increment();
+                return;
+            }
+            Track track = spotifyService.getTrack(t.uri());
+            List<String> artistGenres = spotifyService.getArtistGenres(track);
+            RequestRecord rec = classificationService.classify(
+                t.owner(),
+                track.getName(),
+                track.getArtists()[0].getName(),
+                artistGenres,
+                track.getIsExplicit(),
+                t.uri()
+            );
+            if (queues.add(t.owner(), rec)) {
+                t.finish(Status.ADDED, rec.isValid() ? null : "Track doesn't match the current preferences");
+                added.increment();
+            } else {
+                t.finish(Status.DUPLICATE, "Track already requested");
+                duplicates.increment();
+            }
+        } catch (Exception e) {
+            System.err.println("Request ingestion failed for " + t.uri() + ": " + e.getMessage());
+            t.finish(Status.FAILED, e.getMessage() == null ? "unknown" : e.getMessage());
+            failed.increment();
+        } finally {
+            recordProcessingMs((System.nanoTime() - started) / 1e6);
+        }
+    }
+
+    private void recordProcessingMs(double ms) {
+        long prev, next;
+        do {
+            prev = avgProcessingMs.get();
+            double avg = Double.longBitsToDouble(prev);
+            next = Double.doubleToLongBits(avg + EWMA_WEIGHT * (ms - avg));
+        } while (!avgProcessingMs.compareAndSet(prev, next));
+    }
+
+    private double avgProcessingMs() {
+        return Double.longBitsToDouble(avgProcessingMs.get());
+    }
+
+    /** How long the current backlog should take to drain, given recent processing times. */
+    int retryAfterSeconds() {
+        double drainMs = (pool.getQueue().size() + 1) * avgProcessingMs() / pool.getMaximumPoolSize();
+        return (int) Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, Math.ceil(drainMs / 1000)));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("workers", pool.getMaximumPoolSize());
+        out.put("active", pool.getActiveCount());
+        out.put("queued", pool.getQueue().size());
+        out.put("capacity", pool.getQueue().size() + pool.getQueue().remainingCapacity());
+        out.put("accepted", accepted.sum());
+        out.put("rejected", rejected.sum());
+        out.put("added", added.sum());
+        out.put("duplicates", duplicates.sum());
+        out.put("coalesced", coalesced.sum());
+        out.put("failed", failed.sum());
+        out.put("avgProcessingMs", Math.round(avgProcessingMs()));
+        out.put("tickets", tickets.stats());
+        return out;
+    }
+}
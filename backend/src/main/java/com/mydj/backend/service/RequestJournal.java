@@ -0,0 +1,577 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.model.RequestRecord;
+import com.mydj.backend.util.DataDirs;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal of request-queue and settings changes,
+ * kept in the data directory next to tokens.json. The journal mirrors the
+ * state it has recorded, so it can fold itself into a snapshot file and start
+ * over without calling back into the services that write to it.
+ *
+ * <p>Journal layout: a header (magic, epoch) followed by entries of
+ * [length][crc32][payload]. Replay stops at the first zero length, bad
+ * checksum or undecodable entry, which is where a torn write would be. The
+ * snapshot carries the epoch of the journal that continues it; a journal with
+ * any other epoch was already folded in and is discarded. Entries are decoded
+ * straight from the mapped pages, which keeps a replay of 100k entries to a
+ * few hundred milliseconds on a cold JVM.
+ *
+ * <p>Compaction runs on the journal's own thread once the journal is three
+ * quarters full. Two journal files take turns: the snapshot is written while
+ * appends carry on into the current file, and appends only wait for the short
+ * switch to the other one. An entry that finds the journal full is kept in
+ * the mirror for the next snapshot, and its caller is told it is not yet
+ * durable.
+ */
+@Component
+public class RequestJournal {
+
+    public record OwnerSettings(boolean allowExplicit, List<String> allowedGenres) {}
+
+    private static final int JOURNAL_MAGIC = 0x4D444A4A;  // "MDJJ"
+    private static final int SNAPSHOT_MAGIC = 0x4D444A53; // "MDJS"
+    private static final int HEADER_BYTES = 12;
+    private static final int ENTRY_HEADER_BYTES = 8;
+
+    private static final byte ADD = 1;
+    private static final byte UPDATE = 2;
+    private static final byte REMOVE = 3;
+    private static final byte CLEAR = 4;
+    private static final byte SETTINGS = 5;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final Path journalFile;
+    private final Path otherJournalFile;
+    private final Path snapshotFile;
+    private final int capacityBytes;
+    private final long compactEveryMs;
+    private final int compactAtBytes;
+    private final Object compactLock = new Object();
+
+    // State folded from snapshot + journal, kept current by every append.
+    private final Map<String, LinkedHashMap<String, RequestRecord>> queues = new LinkedHashMap<>();
+    private final Map<String, OwnerSettings> settings = new LinkedHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private Path liveFile;
+    private long epoch;
+    private int entries;
+    private int unsaved;
+    private boolean dirty;
+    private boolean compactionQueued;
+    private long lastCompactionMs;
+
+    @Autowired
+    public RequestJournal(@Value("${mydj.journal.enabled:true}") boolean enabled,
+                          @Value("${mydj.journal.capacityMb:32}") int capacityMb,
+                          @Value("${mydj.journal.compactEveryMinutes:10}") int compactEveryMinutes) {
+        this(enabled, DataDirs.dataDir(), capacityMb * 1024 * 1024, compactEveryMinutes * 60_000L);
+    }
+
+    RequestJournal(boolean enabled, Path dir, int capacityBytes, long compactEveryMs) {
+        this.enabled = enabled;
+        this.dir = dir;
+        this.journalFile = dir.resolve("requests.journal");
+        this.otherJournalFile = dir.resolve("requests.journal.next");
+        this.snapshotFile = dir.resolve("requests.snapshot");
+        this.capacityBytes = Math.max(capacityBytes, 4096);
+        this.compactEveryMs = compactEveryMs;
+        this.compactAtBytes = this.capacityBytes / 4 * 3;
+    }
+
+    /** A journal that records nothing; for callers that need no durability. */
+    public static RequestJournal disabled() {
+        return new RequestJournal(false, DataDirs.dataDir(), 0, 0);
+    }
+
+    // Lifecycle
+
+    @PostConstruct
+    public synchronized void open() {
+        if (!enabled) return;
+        try {
+            Files.createDirectories(dir);
+            long snapshotEpoch = loadSnapshot();
+            mapJournal(snapshotEpoch);
+            lastCompactionMs = System.currentTimeMillis();
+        } catch (Exception e) {
+            System.err.println("Request journal unavailable, continuing without it: " + e.getMessage());
+            unmap();
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("request-journal").daemon(true).factory());
+        scheduler.scheduleWithFixedDelay(this::flush, 1, 1, TimeUnit.SECONDS);
+        if (compactEveryMs > 0) {
+            scheduler.scheduleWithFixedDelay(this::compactIfNeeded, compactEveryMs, compactEveryMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) scheduler.shutdownNow();
+        boolean pending;
+        synchronized (this) {
+            pending = unsaved > 0;
+        }
+        // Entries that found the journal full are so far only in the mirror.
+        if (pending) compact();
+        synchronized (this) {
+            flush();
+            unmap();
+        }
+    }
+
+    // Recovered state
+
+    public synchronized Map<String, List<RequestRecord>> recoveredQueues() {
+        Map<String, List<RequestRecord>> out = new LinkedHashMap<>();
+        queues.forEach((owner, q) -> out.put(owner, List.copyOf(q.values())));
+        return out;
+    }
+
+    public synchronized Map<String, OwnerSettings> recoveredSettings() {
+        return new LinkedHashMap<>(settings);
+    }
+
+    // Appends
+
+    // Each returns false when the change is not durable yet: it still counts,
+    // and the next compaction saves it, but a crash before then would lose it.
+
+    public synchronized boolean recordAdded(String owner, RequestRecord r) {
+        return append(ADD, out -> { writeString(out, owner); writeRecord(out, r); });
+    }
+
+    public synchronized boolean recordUpdated(String owner, RequestRecord r) {
+        return append(UPDATE, out -> { writeString(out, owner); writeRecord(out, r); });
+    }
+
+    public synchronized boolean recordRemoved(String owner, String uri) {
+        return append(REMOVE, out -> { writeString(out, owner); writeString(out, uri); });
+    }
+
+    public synchronized boolean ownerCleared(String owner) {
+        return append(CLEAR, out -> writeString(out, owner));
+    }
+
+    public synchronized boolean settingsChanged(String owner, boolean allowExplicit, Collection<String> allowedGenres) {
+        List<String> genres = List.copyOf(allowedGenres);
+        return append(SETTINGS, out -> {
+            writeString(out, owner);
+            out.writeBoolean(allowExplicit);
+            writeStrings(out, genres);
+        });
+    }
+
+    private interface Payload {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private boolean append(byte type, Payload payload) {
+        if (!enabled) return true;
+        if (buffer == null) return false;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            payload.write(out);
+            out.flush();
+            byte[] data = bytes.toByteArray();
+
+            if (buffer.position() + ENTRY_HEADER_BYTES + data.length > capacityBytes) {
+                // Compaction fell behind; the mirror carries it into the next snapshot.
+                apply(new Reader(ByteBuffer.wrap(data)));
+                unsaved++;
+                requestCompaction();
+                return false;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            int start = buffer.position();
+            buffer.position(start + 4);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(data);
+            // Length goes in last so a half-written entry reads as the end of the journal.
+            buffer.putInt(start, data.length);
+            apply(new Reader(ByteBuffer.wrap(data)));
+            entries++;
+            dirty = true;
+            if (buffer.position() >= compactAtBytes) requestCompaction();
+            return true;
+        } catch (Exception e) {
+            System.err.println("Request journal append failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // callers hold the monitor
+    private void requestCompaction() {
+        if (compactionQueued || scheduler == null || scheduler.isShutdown()) return;
+        compactionQueued = true;
+        scheduler.execute(this::compact);
+    }
+
+    // Replay
+
+    private void apply(Reader in) throws IOException {
+        byte type = in.readByte();
+        String owner = in.readString();
+        switch (type) {
+            case ADD -> {
+                RequestRecord r = in.readRecord();
+                queues.computeIfAbsent(owner, k -> new LinkedHashMap<>()).putIfAbsent(r.getUri(), r);
+            }
+            case UPDATE -> {
+                RequestRecord r = in.readRecord();
+                var q = queues.get(owner);
+                if (q != null && q.containsKey(r.getUri())) q.put(r.getUri(), r);
+            }
+            case REMOVE -> {
+                String uri = in.readString();
+                var q = queues.get(owner);
+                if (q != null) q.remove(uri);
+            }
+            case CLEAR -> queues.remove(owner);
+            case SETTINGS -> {
+                boolean allowExplicit = in.readBoolean();
+                settings.put(owner, new OwnerSettings(allowExplicit, in.readStrings()));
+            }
+            default -> throw new IOException("Unknown journal entry type " + type);
+        }
+    }
+
+    /** Maps whichever journal file continues the snapshot and replays it, or starts a fresh one. */
+    private void mapJournal(long expectedEpoch) throws IOException {
+        Path live = null;
+        for (Path candidate : List.of(journalFile, otherJournalFile)) {
+            if (live == null && hasEpoch(candidate, expectedEpoch)) live = candidate;
+            else Files.deleteIfExists(candidate);
+        }
+        boolean reuse = live != null;
+        liveFile = reuse ? live : journalFile;
+
+        channel = FileChannel.open(liveFile,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes);
+        epoch = expectedEpoch;
+        entries = 0;
+        if (!reuse) {
+            buffer.putInt(0, JOURNAL_MAGIC);
+            buffer.putLong(4, epoch);
+            buffer.position(HEADER_BYTES);
+            return;
+        }
+
+        int pos = HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        Reader in = new Reader(buffer.duplicate());
+        while (pos + ENTRY_HEADER_BYTES <= capacityBytes) {
+            int len = buffer.getInt(pos);
+            if (len <= 0 || pos + ENTRY_HEADER_BYTES + len > capacityBytes) break;
+            int expected = buffer.getInt(pos + 4);
+            ByteBuffer entry = buffer.slice(pos + ENTRY_HEADER_BYTES, len);
+            crc.reset();
+            crc.update(entry);
+            if ((int) crc.getValue() != expected) break;
+            in.buf.limit(pos + ENTRY_HEADER_BYTES + len).position(pos + ENTRY_HEADER_BYTES);
+            try {
+                apply(in);
+            } catch (Exception e) {
+                // Checksum matched but the entry doesn't decode: end of the journal, as for a torn write.
+                break;
+            }
+            entries++;
+            pos += ENTRY_HEADER_BYTES + len;
+        }
+        // Clear whatever follows the last good entry so it can never be mistaken for one.
+        for (int i = pos; i < Math.min(capacityBytes, pos + ENTRY_HEADER_BYTES); i++) buffer.put(i, (byte) 0);
+        buffer.position(pos);
+    }
+
+    private static boolean hasEpoch(Path file, long expectedEpoch) throws IOException {
+        if (!Files.exists(file)) return false;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER_BYTES) return false;
+            MappedByteBuffer head = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            return head.getInt() == JOURNAL_MAGIC && head.getLong() == expectedEpoch;
+        }
+    }
+
+    private void unmap() {
+        buffer = null;
+        if (channel != null) {
+            try { channel.close(); } catch (IOException ignored) {}
+            channel = null;
+        }
+    }
+
+    private synchronized void flush() {
+        if (buffer == null || !dirty) return;
+        buffer.force();
+        dirty = false;
+    }
+
+    // Compaction
+
+    private void compactIfNeeded() {
+        boolean pending;
+        synchronized (this) {
+            pending = entries > 0 || unsaved > 0;
+        }
+        if (pending) compact();
+    }
+
+    /**
+     * Writes the current state to the snapshot file and continues in the
+     * other journal file with the next epoch. Appends only wait for the
+     * switch, not for the snapshot; if any step fails the current journal
+     * stays in use.
+     */
+    public void compact() {
+        synchronized (compactLock) {
+            long nextEpoch;
+            Path target;
+            int copiedUpTo;
+            int entriesCopied;
+            int unsavedCopied;
+            Map<String, LinkedHashMap<String, RequestRecord>> queuesCopy = new LinkedHashMap<>();
+            Map<String, OwnerSettings> settingsCopy;
+            synchronized (this) {
+                compactionQueued = false;
+                if (buffer == null) return;
+                nextEpoch = epoch + 1;
+                target = liveFile.equals(journalFile) ? otherJournalFile : journalFile;
+                copiedUpTo = buffer.position();
+                entriesCopied = entries;
+                unsavedCopied = unsaved;
+                queues.forEach((owner, q) -> queuesCopy.put(owner, new LinkedHashMap<>(q)));
+                settingsCopy = new LinkedHashMap<>(settings);
+            }
+
+            Path tmp = null;
+            FileChannel nextChannel = null;
+            boolean switched = false;
+            try {
+                tmp = writeSnapshot(nextEpoch, queuesCopy, settingsCopy);
+                Files.deleteIfExists(target);
+                nextChannel = FileChannel.open(target,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                MappedByteBuffer next = nextChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes);
+                next.putInt(0, JOURNAL_MAGIC);
+                next.putLong(4, nextEpoch);
+                next.position(HEADER_BYTES);
+
+                synchronized (this) {
+                    // Entries appended while the snapshot was written move over as they are.
+                    next.put(buffer.slice(copiedUpTo, buffer.position() - copiedUpTo));
+                    next.force();
+                    installSnapshot(tmp);
+                    tmp = null;
+                    // The snapshot now names the new journal; switch to it.
+                    FileChannel old = channel;
+                    Path oldFile = liveFile;
+                    channel = nextChannel;
+                    buffer = next;
+                    nextChannel = null;
+                    switched = true;
+                    liveFile = target;
+                    epoch = nextEpoch;
+                    entries -= entriesCopied;
+                    unsaved -= unsavedCopied;
+                    dirty = false;
+                    lastCompactionMs = System.currentTimeMillis();
+                    try { old.close(); } catch (IOException ignored) {}
+                    Files.deleteIfExists(oldFile);
+                    if (unsaved > 0) requestCompaction();
+                }
+            } catch (Exception e) {
+                System.err.println("Request journal compaction failed, keeping the current journal: " + e.getMessage());
+            } finally {
+                if (nextChannel != null) {
+                    try { nextChannel.close(); } catch (IOException ignored) {}
+                }
+                try {
+                    if (tmp != null) Files.deleteIfExists(tmp);
+                    if (!switched) Files.deleteIfExists(target);
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    private Path writeSnapshot(long snapshotEpoch, Map<String, LinkedHashMap<String, RequestRecord>> queues,
+                               Map<String, OwnerSettings> settings) throws IOException {
+        Path tmp = Files.createTempFile(dir, "requests", ".snapshot.tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(snapshotEpoch);
+            out.writeInt(queues.size());
+            for (var e : queues.entrySet()) {
+                writeString(out, e.getKey());
+                out.writeInt(e.getValue().size());
+                for (RequestRecord r : e.getValue().values()) writeRecord(out, r);
+            }
+            out.writeInt(settings.size());
+            for (var e : settings.entrySet()) {
+                writeString(out, e.getKey());
+                out.writeBoolean(e.getValue().allowExplicit());
+                writeStrings(out, e.getValue().allowedGenres());
+            }
+            out.flush();
+            ch.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return tmp;
+    }
+
+    private void installSnapshot(Path tmp) throws IOException {
+        try {
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception atomicUnsupported) {
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private long loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotFile)) return 0L;
+        try (FileChannel ch = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            Reader in = new Reader(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+            if (in.buf.getInt() != SNAPSHOT_MAGIC) throw new IOException("Not a request snapshot: " + snapshotFile);
+            long snapshotEpoch = in.buf.getLong();
+            int owners = in.buf.getInt();
+            for (int i = 0; i < owners; i++) {
+                String owner = in.readString();
+                int n = in.buf.getInt();
+                LinkedHashMap<String, RequestRecord> q = new LinkedHashMap<>();
+                for (int j = 0; j < n; j++) {
+                    RequestRecord r = in.readRecord();
+                    q.put(r.getUri(), r);
+                }
+                queues.put(owner, q);
+            }
+            int configs = in.buf.getInt();
+            for (int i = 0; i < configs; i++) {
+                String owner = in.readString();
+                boolean allowExplicit = in.readBoolean();
+                settings.put(owner, new OwnerSettings(allowExplicit, in.readStrings()));
+            }
+            return snapshotEpoch;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated request snapshot: " + snapshotFile);
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", buffer != null);
+        out.put("epoch", epoch);
+        out.put("entries", entries);
+        out.put("unsaved", unsaved);
+        out.put("bytesUsed", buffer == null ? 0 : buffer.position());
+        out.put("capacityBytes", capacityBytes);
+        out.put("lastCompactionMs", lastCompactionMs);
+        return out;
+    }
+
+    // Encoding
+
+    private static void writeRecord(DataOutputStream out, RequestRecord r) throws IOException {
+        writeString(out, r.getTitle());
+        writeString(out, r.getArtist());
+        writeString(out, r.getGenre());
+        out.writeBoolean(r.isExplicit());
+        writeString(out, r.getUri());
+        out.writeBoolean(r.isValid());
+        writeStrings(out, r.getArtistGenres());
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeShort(values.size());
+        for (String v : values) writeString(out, v);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Decodes entries in place from a (mapped) buffer, reusing one scratch array. */
+    private static final class Reader {
+        final ByteBuffer buf;
+        private byte[] scratch = new byte[256];
+
+        Reader(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        byte readByte() {
+            return buf.get();
+        }
+
+        boolean readBoolean() {
+            return buf.get() != 0;
+        }
+
+        String readString() throws IOException {
+            int n = buf.getInt();
+            if (n < 0 || n > buf.remaining()) throw new IOException("Corrupt string length " + n);
+            if (n > scratch.length) scratch = new byte[Math.max(n, scratch.length * 2)];
+            buf.get(scratch, 0, n);
+            return new String(scratch, 0, n, StandardCharsets.UTF_8);
+        }
+
+        List<String> readStrings() throws IOException {
+            int n = Short.toUnsignedInt(buf.getShort());
+            List<String> out = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) out.add(readString());
+            return out;
+        }
+
+        RequestRecord readRecord() throws IOException {
+            String title = readString();
+            String artist = readString();
+            String genre = readString();
+            boolean explicit = readBoolean();
+            String uri = readString();
+            boolean valid = readBoolean();
+            return new RequestRecord(title, artist, genre, explicit, uri, valid, readStrings());
+        }
+    }
+}
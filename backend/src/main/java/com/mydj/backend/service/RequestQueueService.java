@@ -1,56 +1,325 @@
 package com.mydj.backend.service;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.mydj.backend.model.RequestRecord;
+import jakarta.annotation.PostConstruct;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
 
+/**
+ * Per-owner request queues. Each owner has a single insertion-ordered index
+ * keyed by track URI, so dedup, removal and moving a record between the valid
+ * and invalid lists are O(1). Readers get immutable snapshots that are built
+ * at most once per change. Every change is also written to the
+ * {@link RequestJournal}, from which the queues are restored on startup.
+ *
+ * <p>Each queue carries a version that moves forward on every change, plus a
+ * short log of recent changes, so clients can ask for what changed since the
+ * version they hold, or wait for the next change.
+ */
 @Service
 public class RequestQueueService {
 
+    private static final int CHANGE_LOG_SIZE = 512;
+
+    /**
+     * An immutable view of one owner's queues at one version. The full JSON
+     * body for /requests is encoded on first use and then shared by every
+     * reader until the next change.
+     */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(0L, List.of(), List.of());
+
+        private final long version;
+        private final List<RequestRecord> valid;
+        private final List<RequestRecord> invalid;
+        private volatile byte[] json;
+
+        Snapshot(long version, List<RequestRecord> valid, List<RequestRecord> invalid) {
+            this.version = version;
+            this.valid = valid;
+            this.invalid = invalid;
+        }
+
+        public long version() { return version; }
+        public List<RequestRecord> valid() { return valid; }
+        public List<RequestRecord> invalid() { return invalid; }
+
+        /** {"version", "full": true, "valid": [...], "invalid": [...]}; callers must not modify the array. */
+        public byte[] json() {
+            byte[] out = json;
+            if (out == null) {
+                // Racing readers may both encode; the results are identical.
+                out = encode();
+                json = out;
+            }
+            return out;
+        }
+
+        private byte[] encode() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 160 * (valid.size() + invalid.size()));
+            try (JsonGenerator g = JSON.createGenerator(bytes)) {
+                g.writeStartObject();
+                g.writeNumberField("version", version);
+                g.writeBooleanField("full", true);
+                writeRecords(g, "valid", valid);
+                writeRecords(g, "invalid", invalid);
+                g.writeEndObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        // Same fields and string encoding as RequestRecord.toMap().
+        private static void writeRecords(JsonGenerator g, String name, List<RequestRecord> records) throws IOException {
+            g.writeArrayFieldStart(name);
+            for (RequestRecord r : records) {
+                g.writeStartObject();
+                g.writeStringField("title", r.getTitle());
+                g.writeStringField("artist", r.getArtist());
+                g.writeStringField("genre", r.getGenre());
+                g.writeStringField("explicit", Boolean.toString(r.isExplicit()));
+                g.writeStringField("uri", r.getUri());
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+        }
+    }
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    /** Records added or reclassified, and URIs removed, after some version. Upserts keep queue order. */
+    public record Delta(long version, List<RequestRecord> upserts, List<String> removed) {}
+
+    /** One logged change; a null record means the URI was removed. */
+    private record Change(long version, String uri, RequestRecord record) {}
+
     private static final class Queues {
-        final CopyOnWriteArrayList<RequestRecord> valid = new CopyOnWriteArrayList<>();
-        final CopyOnWriteArrayList<RequestRecord> invalid = new CopyOnWriteArrayList<>();
+        private final LinkedHashMap<String, RequestRecord> byUri = new LinkedHashMap<>();
+        private final ArrayDeque<Change> log = new ArrayDeque<>();
+        private List<CompletableFuture<Void>> waiters = new ArrayList<>();
+        // Starts at the wall clock so versions stay ahead of ones handed out before a restart.
+        private long version = System.currentTimeMillis();
+        private volatile Snapshot snapshot = Snapshot.EMPTY;
+        private volatile boolean stale = true;
+
+        Snapshot snapshot() {
+            if (!stale) return snapshot;
+            synchronized (this) {
+                if (stale) {
+                    List<RequestRecord> valid = new ArrayList<>();
+                    List<RequestRecord> invalid = new ArrayList<>();
+                    for (RequestRecord r : byUri.values()) {
+                        if (r.isValid()) valid.add(r); else invalid.add(r);
+                    }
+                    snapshot = new Snapshot(version, List.copyOf(valid), List.copyOf(invalid));
+                    stale = false;
+                }
+                return snapshot;
+            }
+        }
+
+        // callers hold the monitor
+        void changed(String uri, RequestRecord record) {
+            version++;
+            log.addLast(new Change(version, uri, record));
+            if (log.size() > CHANGE_LOG_SIZE) log.removeFirst();
+            stale = true;
+        }
+
+        // callers hold the monitor; anyone holding an older version must re-read everything
+        void reset() {
+            version++;
+            log.clear();
+            stale = true;
+        }
+
+        /** Completes pending long-polls; called after releasing the monitor. */
+        void wake() {
+            List<CompletableFuture<Void>> ready;
+            synchronized (this) {
+                if (waiters.isEmpty()) return;
+                ready = waiters;
+                waiters = new ArrayList<>();
+            }
+            for (CompletableFuture<Void> f : ready) f.complete(null);
+        }
     }
 
     private final ConcurrentMap<String, Queues> byOwner = new ConcurrentHashMap<>();
+    private final RequestJournal journal;
+
+    public RequestQueueService(RequestJournal journal) {
+        this.journal = journal;
+    }
+
+    @PostConstruct
+    public void restore() {
+        journal.recoveredQueues().forEach((owner, records) -> {
+            Queues nq = new Queues();
+            synchronized (nq) {
+                for (RequestRecord r : records) nq.byUri.putIfAbsent(r.getUri(), r);
+                nq.reset();
+            }
+            byOwner.put(owner, nq);
+        });
+    }
 
     private Queues q(String owner) {
         return byOwner.computeIfAbsent(owner, k -> new Queues());
     }
 
-    public List<RequestRecord> getValid(String owner) { return List.copyOf(q(owner).valid); }
-    public List<RequestRecord> getInvalid(String owner) { return List.copyOf(q(owner).invalid); }
+    public Snapshot snapshot(String owner) {
+        Queues q = byOwner.get(owner);
+        return q == null ? Snapshot.EMPTY : q.snapshot();
+    }
+
+    public List<RequestRecord> getValid(String owner) { return snapshot(owner).valid(); }
+    public List<RequestRecord> getInvalid(String owner) { return snapshot(owner).invalid(); }
+
+    /**
+     * What changed after the given version, collapsed to the latest state per
+     * URI. Returns null when the log no longer reaches back that far, or the
+     * version isn't one this queue handed out; the caller then needs a full
+     * snapshot.
+     */
+    public Delta changesSince(String owner, long since) {
+        Queues q = byOwner.get(owner);
+        if (q == null) return since == 0L ? new Delta(0L, List.of(), List.of()) : null;
+        synchronized (q) {
+            if (since == q.version) return new Delta(since, List.of(), List.of());
+            if (since > q.version) return null;
+            Change oldest = q.log.peekFirst();
+            if (oldest == null || oldest.version() > since + 1) return null;
+
+            Map<String, RequestRecord> touched = new LinkedHashMap<>();
+            for (Change c : q.log) {
+                if (c.version() > since) touched.put(c.uri(), c.record());
+            }
+            // Upserts in queue order, so a client can apply them to an ordered map as they come.
+            List<RequestRecord> upserts = new ArrayList<>();
+            for (RequestRecord r : q.byUri.values()) {
+                if (touched.get(r.getUri()) != null) upserts.add(r);
+            }
+            List<String> removed = new ArrayList<>();
+            touched.forEach((uri, r) -> { if (r == null) removed.add(uri); });
+            return new Delta(q.version, upserts, removed);
+        }
+    }
+
+    /**
+     * Completes once the owner's queue moves past the given version;
+     * immediately if it already has.
+     */
+    public CompletableFuture<Void> awaitChange(String owner, long version) {
+        Queues q = q(owner);
+        synchronized (q) {
+            if (q.version != version) return CompletableFuture.completedFuture(null);
+            q.waiters.removeIf(CompletableFuture::isDone); // timed out and cancelled
+            CompletableFuture<Void> f = new CompletableFuture<>();
+            q.waiters.add(f);
+            return f;
+        }
+    }
 
-    public void add(String owner, RequestRecord r) {
-        if (r.isValid()) q(owner).valid.add(r);
-        else q(owner).invalid.add(r);
+    /**
+     * Adds the record unless a request for the same URI is already queued.
+     * Returns whether it was added.
+     */
+    public boolean add(String owner, RequestRecord r) {
+        Queues q = q(owner);
+        synchronized (q) {
+            if (q.byUri.putIfAbsent(r.getUri(), r) != null) return false;
+            journaled(journal.recordAdded(owner, r), owner);
+            q.changed(r.getUri(), r);
+        }
+        q.wake();
+        return true;
     }
 
     public void removeByUri(String owner, String uri) {
-        q(owner).valid.removeIf(rr -> Objects.equals(rr.getUri(), uri));
-        q(owner).invalid.removeIf(rr -> Objects.equals(rr.getUri(), uri));
+        Queues q = byOwner.get(owner);
+        if (q == null) return;
+        synchronized (q) {
+            if (q.byUri.remove(uri) == null) return;
+            journaled(journal.recordRemoved(owner, uri), owner);
+            q.changed(uri, null);
+        }
+        q.wake();
     }
 
     public boolean containsUri(String owner, String uri) {
-        return q(owner).valid.stream().anyMatch(r -> Objects.equals(r.getUri(), uri))
-            || q(owner).invalid.stream().anyMatch(r -> Objects.equals(r.getUri(), uri));
+        Queues q = byOwner.get(owner);
+        if (q == null) return false;
+        synchronized (q) {
+            return q.byUri.containsKey(uri);
+        }
     }
 
-    public void clearAll(String owner) { 
-      byOwner.remove(owner); 
+    /**
+     * Replaces every record of the owner in place, keeping arrival order. A
+     * record whose validity changes simply moves to the other list.
+     */
+    public void updateAll(String owner, UnaryOperator<RequestRecord> update) {
+        Queues q = byOwner.get(owner);
+        if (q == null) return;
+        boolean changed = false;
+        synchronized (q) {
+            for (Map.Entry<String, RequestRecord> e : q.byUri.entrySet()) {
+                RequestRecord next = update.apply(e.getValue());
+                if (next != null && !next.equals(e.getValue())) {
+                    e.setValue(next);
+                    journaled(journal.recordUpdated(owner, next), owner);
+                    q.changed(e.getKey(), next);
+                    changed = true;
+                }
+            }
+        }
+        if (changed) q.wake();
+    }
+
+    public void clearAll(String owner) {
+      Queues q = byOwner.get(owner);
+      if (q == null) return;
+      synchronized (q) {
+          q.byUri.clear();
+          journaled(journal.ownerCleared(owner), owner);
+          q.reset();
+      }
+      q.wake();
     }
 
     public void replaceAll(String owner, List<RequestRecord> records) {
-        Queues nq = new Queues();
-        for (RequestRecord r : records) {
-            if (r.isValid()) nq.valid.add(r); else nq.invalid.add(r);
+        Queues q = q(owner);
+        synchronized (q) {
+            q.byUri.clear();
+            boolean durable = journal.ownerCleared(owner);
+            for (RequestRecord r : records) {
+                if (q.byUri.putIfAbsent(r.getUri(), r) == null) durable &= journal.recordAdded(owner, r);
+            }
+            journaled(durable, owner);
+            q.reset();
         }
-        byOwner.put(owner, nq);
+        q.wake();
+    }
+
+    // The change stands either way; the journal saves it with its next snapshot.
+    private static void journaled(boolean durable, String owner) {
+        if (!durable) System.err.println("Request journal has not persisted a change for " + owner + " yet");
     }
 
 }
@@ -1,74 +1,28 @@
 package com.mydj.backend.service;
 
 import com.mydj.backend.model.RequestRecord;
-import se.michaelthelin.spotify.model_objects.specification.Artist;
-import se.michaelthelin.spotify.model_objects.specification.Track;
-import com.mydj.backend.util.UriUtils;
-import java.util.*;
 import org.springframework.stereotype.Service;
 
 /**
  * Used to reclassify songs (valid or invalid) after the user makes
  * a preference change for which types of songs they would like to accept.
+ * Records carry their artist genres and explicit flag, so this is a pure
+ * in-memory pass over the owner's queues.
  */
 @Service
 public class RequestReclassifier {
 
-  private final SpotifyService spotifyService;
   private final RequestClassificationService classificationService;
   private final RequestQueueService queues;
 
-  public RequestReclassifier(SpotifyService spotifyService,
-                              RequestClassificationService classificationService,
+  public RequestReclassifier(RequestClassificationService classificationService,
                               RequestQueueService queues) {
-      this.spotifyService = spotifyService;
       this.classificationService = classificationService;
       this.queues = queues;
   }
 
   public void reclassifyAllForOwner(String owner) {
-      var snapshot = new ArrayList<RequestRecord>();
-      snapshot.addAll(queues.getValid(owner));
-      snapshot.addAll(queues.getInvalid(owner));
-      if (snapshot.isEmpty()) return;
-
-      Map<String, Track> trackCache = new HashMap<>();
-      Map<String, Artist> artistCache = new HashMap<>();
-
-      var rebuilt = new ArrayList<RequestRecord>(snapshot.size());
-
-      for (RequestRecord r : snapshot) {
-          String uri = UriUtils.canonicalTrackUri(r.getUri());
-          Track track = trackCache.computeIfAbsent(uri, u -> {
-              try { return spotifyService.getTrack(u); } catch (Exception e) { return null; }
-          });
-          if (track == null) { rebuilt.add(r); continue; }
-
-          Set<String> genreSet = new LinkedHashSet<>();
-          for (se.michaelthelin.spotify.model_objects.specification.ArtistSimplified a : track.getArtists()) {
-              Artist full = artistCache.computeIfAbsent(a.getId(), id -> {
-                  try { return spotifyService.getArtist(id); } catch (Exception e) { return null; }
-              });
-              if (full != null && full.getGenres() != null) {
-                  for (String g : full.getGenres()) {
-                      if (g != null && !g.isBlank()) genreSet.add(g.toLowerCase(Locale.ROOT).trim());
-                  }
-              }
-          }
-          List<String> artistGenres = new ArrayList<>(genreSet);
-
-          RequestRecord re = classificationService.classify(
-              owner,
-              track.getName(),
-              track.getArtists()[0].getName(),
-              artistGenres,
-              track.getIsExplicit(),
-              uri
-          );
-          rebuilt.add(re);
-      }
-      queues.replaceAll(owner, rebuilt);
+      queues.updateAll(owner, r -> classificationService.reclassify(owner, r));
   }
 
 }
-
@@ -0,0 +1,111 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.util.TtlCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recent /search results, keyed by normalised query. Typeahead sends every
+ * extension of what the guest has typed so far, so a query that isn't cached
+ * itself can often be answered by filtering the results of a shorter one:
+ * always when Spotify returned every match for the shorter query, otherwise
+ * only when enough of its results still match.
+ */
+@Component
+public class SearchResultCache {
+
+    /** Results for one query; complete when Spotify had no further matches. */
+    public record Entry(List<Map<String, String>> rows, int limit, boolean complete) {}
+
+    private final TtlCache<String, Entry> entries;
+    private final LongAdder exactHits = new LongAdder();
+    private final LongAdder prefixHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public SearchResultCache(@Value("${search.cache.maxEntries:1000}") int maxEntries,
+                             @Value("${search.cache.ttlSeconds:300}") long ttlSeconds) {
+        this.entries = new TtlCache<>(maxEntries, ttlSeconds * 1000L);
+    }
+
+    public static String normalize(String query) {
+        return query == null ? "" : query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /** Cached or derived results for the query, or null when Spotify has to be asked. */
+    public List<Map<String, String>> lookup(String query, int limit) {
+        String q = normalize(query);
+        Entry exact = entries.get(q);
+        if (exact != null && (exact.complete() || exact.limit() >= limit)) {
+            exactHits.increment();
+            return head(exact.rows(), limit);
+        }
+        String[] tokens = q.split(" ");
+        for (int len = q.length() - 1; len > 0; len--) {
+            Entry prefix = entries.get(q.substring(0, len));
+            if (prefix == null) continue;
+            List<Map<String, String>> filtered = new ArrayList<>();
+            for (Map<String, String> row : prefix.rows()) {
+                if (matches(row, tokens)) filtered.add(row);
+            }
+            if (prefix.complete() || filtered.size() >= limit) {
+                prefixHits.increment();
+                return head(filtered, limit);
+            }
+            break; // the longest cached prefix is the best evidence there is
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(String query, int limit, List<Map<String, String>> rows, boolean complete) {
+        List<Map<String, String>> frozen = new ArrayList<>(rows.size());
+        for (Map<String, String> row : rows) frozen.add(Collections.unmodifiableMap(new HashMap<>(row)));
+        entries.put(normalize(query), new Entry(List.copyOf(frozen), limit, complete));
+    }
+
+    /** Every query word must start some word of the track name or artist. */
+    static boolean matches(Map<String, String> row, String[] tokens) {
+        String[] words = (row.getOrDefault("name", "") + " " + row.getOrDefault("artist", ""))
+            .toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+");
+        for (String token : tokens) {
+            if (token.isEmpty()) continue;
+            boolean found = false;
+            for (String w : words) {
+                if (w.startsWith(token)) { found = true; break; }
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    private static List<Map<String, String>> head(List<Map<String, String>> rows, int limit) {
+        return rows.size() <= limit ? rows : rows.subList(0, limit);
+    }
+
+    public void flush() {
+        entries.invalidateAll();
+    }
+
+    public Map<String, Object> stats() {
+        long exact = exactHits.sum();
+        long prefix = prefixHits.sum();
+        long miss = misses.sum();
+        long total = exact + prefix + miss;
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("size", entries.size());
+        out.put("exactHits", exact);
+        out.put("prefixHits", prefix);
+        out.put("misses", miss);
+        out.put("hitRatio", total == 0 ? 0.0 : (double) (exact + prefix) / total);
+        return out;
+    }
+}
@@ -0,0 +1,209 @@
+package com.mydj.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control for every HTTP call to Spotify. Calls draw from one
+ * global token bucket and are admitted by lane: while a higher lane is
+ * waiting, lower lanes wait behind it, and the lower lanes may not dip into
+ * the part of the bucket kept in reserve for the lanes above them. A 429 from
+ * Spotify pauses the bucket for its Retry-After. A call that could not be
+ * admitted within its lane's budget is shed with {@link ShedException}
+ * instead of tying up a thread.
+ *
+ * <p>The lane is taken from the calling thread, set with {@link #run}; calls
+ * made outside any lane are the DJ's own actions.
+ */
+@Component
+public class SpotifyCallScheduler {
+
+    /** In priority order. */
+    public enum Lane {
+        /** Playback control and anything else the DJ clicks. */
+        DJ(0.0, 10_000),
+        /** Background enrichment of guest requests. */
+        ENRICHMENT(0.10, 30_000),
+        /** Guest searches: shed quickly rather than queue behind the DJ. */
+        SEARCH(0.25, 2_000),
+        /** Polls and refreshes that can simply be skipped. */
+        BACKGROUND(0.50, 5_000);
+
+        private final double reserveFraction;
+        private final long maxWaitMs;
+
+        Lane(double reserveFraction, long maxWaitMs) {
+            this.reserveFraction = reserveFraction;
+            this.maxWaitMs = maxWaitMs;
+        }
+    }
+
+    /** A call refused because its lane could not be served in time. */
+    public static class ShedException extends IOException {
+        private final Lane lane;
+        private final long retryAfterMs;
+
+        public ShedException(Lane lane, long retryAfterMs) {
+            super("Spotify call shed (" + lane.name().toLowerCase() + " lane busy)");
+            this.lane = lane;
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        public Lane lane() { return lane; }
+        public long retryAfterMs() { return retryAfterMs; }
+    }
+
+    private static final ThreadLocal<Lane> CURRENT = new ThreadLocal<>();
+
+    private final double ratePerMs;
+    private final double burst;
+    private final Lane[] lanes = Lane.values();
+    private final int[] waiting = new int[lanes.length];
+    private final LongAdder[] admitted = new LongAdder[lanes.length];
+    private final LongAdder[] shed = new LongAdder[lanes.length];
+    private final LongAdder rateLimited = new LongAdder();
+
+    // guarded by this
+    private double tokens;
+    private long refilledAtMs;
+    private long pausedUntilMs;
+
+    public SpotifyCallScheduler(@Value("${spotify.rate.perSecond:10}") double perSecond,
+                                @Value("${spotify.rate.burst:20}") int burst) {
+        this.ratePerMs = Math.max(0.1, perSecond) / 1000.0;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.refilledAtMs = System.currentTimeMillis();
+        for (int i = 0; i < lanes.length; i++) {
+            admitted[i] = new LongAdder();
+            shed[i] = new LongAdder();
+        }
+    }
+
+    /** Runs the work with every Spotify call it makes on this thread in the given lane. */
+    public <T> T run(Lane lane, Callable<T> work) throws Exception {
+        Lane previous = CURRENT.get();
+        CURRENT.set(lane);
+        try {
+            return work.call();
+        } finally {
+            if (previous == null) CURRENT.remove(); else CURRENT.set(previous);
+        }
+    }
+
+    public Lane currentLane() {
+        Lane lane = CURRENT.get();
+        return lane == null ? Lane.DJ : lane;
+    }
+
+    /**
+     * Blocks until the current lane may make one call, or throws
+     * {@link ShedException} when that would take longer than the lane allows.
+     */
+    public synchronized void acquire() throws IOException {
+        Lane lane = currentLane();
+        int idx = lane.ordinal();
+        long now = System.currentTimeMillis();
+        long deadline = now + lane.maxWaitMs;
+        double floor = 1 + lane.reserveFraction * burst;
+        waiting[idx]++;
+        try {
+            while (true) {
+                refill(now);
+                long waitMs;
+                if (now < pausedUntilMs) {
+                    waitMs = pausedUntilMs - now;
+                } else if (higherLaneWaiting(idx)) {
+                    waitMs = (long) Math.ceil(1 / ratePerMs);
+                } else if (tokens >= floor) {
+                    tokens -= 1;
+                    admitted[idx].increment();
+                    return;
+                } else {
+                    waitMs = (long) Math.ceil((floor - tokens) / ratePerMs);
+                }
+                if (now + waitMs > deadline) {
+                    shed[idx].increment();
+                    throw new ShedException(lane, waitMs);
+                }
+                wait(Math.max(1, waitMs));
+                now = System.currentTimeMillis();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            shed[idx].increment();
+            throw new ShedException(lane, 0);
+        } finally {
+            waiting[idx]--;
+            notifyAll();
+        }
+    }
+
+    /** Spotify answered 429: admit nothing until Retry-After has passed. */
+    public synchronized void pauseFor(long retryAfterMs) {
+        rateLimited.increment();
+        long until = System.currentTimeMillis() + Math.max(1_000L, retryAfterMs);
+        if (until > pausedUntilMs) pausedUntilMs = until;
+        tokens = 0;
+        notifyAll();
+    }
+
+    /** A call admitted by {@link #acquire} was never sent; its token goes back in the bucket. */
+    public synchronized void refund() {
+        refill(System.currentTimeMillis());
+        tokens = Math.min(burst, tokens + 1);
+        notifyAll();
+    }
+
+    /** How long the current lane may wait for a call to start. */
+    public long maxWaitMs() {
+        return currentLane().maxWaitMs;
+    }
+
+    /** Whether the current lane is allowed to wait this long, e.g. to retry after a 429. */
+    public boolean canWait(long delayMs) {
+        return delayMs < currentLane().maxWaitMs;
+    }
+
+    // callers hold the monitor
+    private void refill(long now) {
+        if (now > refilledAtMs) {
+            tokens = Math.min(burst, tokens + (now - refilledAtMs) * ratePerMs);
+            refilledAtMs = now;
+        }
+    }
+
+    private boolean higherLaneWaiting(int idx) {
+        for (int i = 0; i < idx; i++) {
+            if (waiting[i] > 0) return true;
+        }
+        return false;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        refill(System.currentTimeMillis());
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("ratePerSecond", ratePerMs * 1000);
+        out.put("burst", (int) burst);
+        out.put("tokens", Math.floor(tokens * 10) / 10);
+        out.put("pausedForMs", Math.max(0, pausedUntilMs - System.currentTimeMillis()));
+        out.put("rateLimited", rateLimited.sum());
+        Map<String, Object> byLane = new LinkedHashMap<>();
+        for (Lane lane : lanes) {
+            int i = lane.ordinal();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("waiting", waiting[i]);
+            m.put("admitted", admitted[i].sum());
+            m.put("shed", shed[i].sum());
+            byLane.put(lane.name().toLowerCase(), m);
+        }
+        out.put("lanes", byLane);
+        return out;
+    }
+}
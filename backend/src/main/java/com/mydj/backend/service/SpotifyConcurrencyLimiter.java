@@ -0,0 +1,142 @@
+package com.mydj.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adaptive cap on the number of Spotify calls in flight. The limit grows by
+ * about one per round trip while calls are using it and latency holds
+ * steady, and is cut multiplicatively when latency climbs well above its
+ * baseline, a call times out, or Spotify answers 429 (AIMD). Callers over
+ * the limit wait for a slot, and a freed slot goes to the highest
+ * {@link SpotifyCallScheduler.Lane} waiting, so a limit cut to one or two
+ * doesn't put the DJ's clicks behind background work.
+ */
+@Component
+public class SpotifyConcurrencyLimiter {
+
+    public enum Outcome { OK, RATE_LIMITED, TIMEOUT, IGNORED }
+
+    private static final double SHORT_RTT_WEIGHT = 0.2;
+    private static final double BASELINE_WEIGHT = 0.01;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double LATENCY_BACKOFF = 0.9;
+    private static final double OVERLOAD_BACKOFF = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int[] waiting = new int[SpotifyCallScheduler.Lane.values().length];
+
+    // guarded by this
+    private double limit;
+    private int inFlight;
+    private double shortRttMs;
+    private double baselineRttMs;
+    private long nextDecreaseAtMs;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder increases = new LongAdder();
+    private final LongAdder decreases = new LongAdder();
+
+    public SpotifyConcurrencyLimiter(@Value("${spotify.concurrency.initial:4}") int initial,
+                                     @Value("${spotify.concurrency.min:1}") int min,
+                                     @Value("${spotify.concurrency.max:20}") int max) {
+        this.minLimit = Math.max(1, min);
+        this.maxLimit = Math.max(this.minLimit, max);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initial));
+    }
+
+    /** Waits up to maxWaitMs for a slot; false means the caller should give up. */
+    public synchronized boolean acquire(SpotifyCallScheduler.Lane lane, long maxWaitMs) {
+        int idx = lane.ordinal();
+        long deadline = System.currentTimeMillis() + maxWaitMs;
+        waiting[idx]++;
+        try {
+            while (inFlight >= (int) limit || higherLaneWaiting(idx)) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    rejected.increment();
+                    return false;
+                }
+                wait(left);
+            }
+            inFlight++;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.increment();
+            return false;
+        } finally {
+            waiting[idx]--;
+            // A lower lane may have been held back for us.
+            notifyAll();
+        }
+    }
+
+    private boolean higherLaneWaiting(int idx) {
+        for (int i = 0; i < idx; i++) {
+            if (waiting[i] > 0) return true;
+        }
+        return false;
+    }
+
+    /** Returns the slot and feeds the call's round trip time and outcome into the limit. */
+    public synchronized void release(long rttNanos, Outcome outcome) {
+        int inFlightBefore = inFlight;
+        inFlight--;
+        long now = System.currentTimeMillis();
+        double rttMs = rttNanos / 1e6;
+
+        switch (outcome) {
+            case RATE_LIMITED, TIMEOUT -> decrease(OVERLOAD_BACKOFF, now);
+            case OK -> {
+                shortRttMs = shortRttMs == 0 ? rttMs : shortRttMs + SHORT_RTT_WEIGHT * (rttMs - shortRttMs);
+                // The baseline follows drops at once and rises only slowly.
+                baselineRttMs = baselineRttMs == 0 || rttMs < baselineRttMs
+                    ? rttMs : baselineRttMs + BASELINE_WEIGHT * (rttMs - baselineRttMs);
+                if (shortRttMs > LATENCY_TOLERANCE * baselineRttMs) {
+                    decrease(LATENCY_BACKOFF, now);
+                } else if (inFlightBefore * 2 >= (int) limit && limit < maxLimit) {
+                    // Only grow a limit that is actually being used.
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                    increases.increment();
+                }
+            }
+            case IGNORED -> { }
+        }
+        notifyAll();
+    }
+
+    // callers hold the monitor; at most one cut per round trip, as one overload produces many signals
+    private void decrease(double factor, long now) {
+        if (now < nextDecreaseAtMs) return;
+        limit = Math.max(minLimit, limit * factor);
+        nextDecreaseAtMs = now + Math.max(100L, (long) baselineRttMs);
+        decreases.increment();
+    }
+
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("limit", (int) limit);
+        out.put("minLimit", minLimit);
+        out.put("maxLimit", maxLimit);
+        out.put("inFlight", inFlight);
+        int queued = 0;
+        for (int w : waiting) queued += w;
+        out.put("waiting", queued);
+        out.put("rejected", rejected.sum());
+        out.put("increases", increases.sum());
+        out.put("decreases", decreases.sum());
+        out.put("rttMs", Math.round(shortRttMs));
+        out.put("baselineRttMs", Math.round(baselineRttMs));
+        return out;
+    }
+}
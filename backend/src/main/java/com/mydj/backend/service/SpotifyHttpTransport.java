@@ -0,0 +1,188 @@
+package com.mydj.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.io.ManagedHttpClientConnectionFactory;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.michaelthelin.spotify.IHttpManager;
+import se.michaelthelin.spotify.SpotifyHttpManager;
+import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The single HTTP transport for everything that talks to Spotify. One pooled,
+ * keep-alive connection manager is shared by the SpotifyApi client and by the
+ * raw endpoint calls in {@link SpotifyService}, and every call is admitted
+ * through the {@link SpotifyCallScheduler} and the
+ * {@link SpotifyConcurrencyLimiter}.
+ */
+@Component
+public class SpotifyHttpTransport {
+
+    @Value("${spotify.http.maxConnections:20}")             private int maxConnections;
+    @Value("${spotify.http.connectTimeoutMs:3000}")         private int connectTimeoutMs;
+    @Value("${spotify.http.socketTimeoutMs:10000}")         private int socketTimeoutMs;
+    @Value("${spotify.http.connectionRequestTimeoutMs:5000}") private int connectionRequestTimeoutMs;
+    @Value("${spotify.http.idleTimeoutSeconds:60}")         private int idleTimeoutSeconds;
+
+    private final SpotifyCallScheduler scheduler;
+    private final SpotifyConcurrencyLimiter limiter;
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("spotify-http-evictor").daemon(true).factory());
+
+    private PoolingHttpClientConnectionManager pool;
+    private IHttpManager httpManager;
+
+    public SpotifyHttpTransport(SpotifyCallScheduler scheduler, SpotifyConcurrencyLimiter limiter) {
+        this.scheduler = scheduler;
+        this.limiter = limiter;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.pool = PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(maxConnections)
+            .setMaxConnPerRoute(maxConnections)
+            .setDefaultSocketConfig(SocketConfig.custom()
+                .setSoKeepAlive(true)
+                .setTcpNoDelay(true)
+                .build())
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                .setSocketTimeout(Timeout.ofMilliseconds(socketTimeoutMs))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build())
+            .setConnectionFactory(socket -> {
+                connectionsOpened.increment();
+                return ManagedHttpClientConnectionFactory.INSTANCE.createConnection(socket);
+            })
+            .build();
+
+        SpotifyHttpManager delegate = new SpotifyHttpManager.Builder()
+            .setConnectionManager(pool)
+            .setConnectionRequestTimeout(connectionRequestTimeoutMs)
+            .setSocketTimeout(socketTimeoutMs)
+            .build();
+        this.httpManager = new ScheduledHttpManager(delegate);
+
+        evictor.scheduleWithFixedDelay(() -> {
+            pool.closeExpired();
+            pool.closeIdle(TimeValue.ofSeconds(idleTimeoutSeconds));
+        }, idleTimeoutSeconds, idleTimeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        evictor.shutdownNow();
+        pool.close();
+    }
+
+    public IHttpManager httpManager() {
+        return httpManager;
+    }
+
+    public Map<String, Object> stats() {
+        PoolStats total = pool.getTotalStats();
+        long opened = connectionsOpened.sum();
+        long sent = requests.sum();
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("maxConnections", total.getMax());
+        out.put("leased", total.getLeased());
+        out.put("available", total.getAvailable());
+        out.put("pending", total.getPending());
+        out.put("connectionsOpened", opened);
+        out.put("requests", sent);
+        out.put("reuseRatio", sent == 0 ? 0.0 : Math.max(0.0, 1.0 - (double) opened / sent));
+        return out;
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        String send() throws IOException, SpotifyWebApiException, ParseException;
+    }
+
+    /**
+     * Admits each call through the scheduler and the concurrency limiter and
+     * counts it. On a 429 the scheduler is paused for Retry-After and the call
+     * is retried once if its lane can wait that long.
+     */
+    private final class ScheduledHttpManager implements IHttpManager {
+        private final IHttpManager delegate;
+
+        ScheduledHttpManager(IHttpManager delegate) {
+            this.delegate = delegate;
+        }
+
+        private String send(Call call) throws IOException, SpotifyWebApiException, ParseException {
+            for (int attempt = 0; ; attempt++) {
+                scheduler.acquire();
+                if (!limiter.acquire(scheduler.currentLane(), scheduler.maxWaitMs())) {
+                    // Never sent: hand the bucket token to the next call.
+                    scheduler.refund();
+                    throw new SpotifyCallScheduler.ShedException(scheduler.currentLane(), 0);
+                }
+                requests.increment();
+                long started = System.nanoTime();
+                SpotifyConcurrencyLimiter.Outcome outcome = SpotifyConcurrencyLimiter.Outcome.IGNORED;
+                try {
+                    String body = call.send();
+                    outcome = SpotifyConcurrencyLimiter.Outcome.OK;
+                    return body;
+                } catch (TooManyRequestsException e) {
+                    outcome = SpotifyConcurrencyLimiter.Outcome.RATE_LIMITED;
+                    long retryAfterMs = Math.max(1, e.getRetryAfter()) * 1000L;
+                    scheduler.pauseFor(retryAfterMs);
+                    if (attempt > 0 || !scheduler.canWait(retryAfterMs)) throw e;
+                } catch (InterruptedIOException e) {
+                    outcome = SpotifyConcurrencyLimiter.Outcome.TIMEOUT;
+                    throw e;
+                } finally {
+                    limiter.release(System.nanoTime() - started, outcome);
+                }
+            }
+        }
+
+        @Override
+        public String get(URI uri, Header[] headers) throws IOException, SpotifyWebApiException, ParseException {
+            return send(() -> delegate.get(uri, headers));
+        }
+
+        @Override
+        public String post(URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException, ParseException {
+            return send(() -> delegate.post(uri, headers, body));
+        }
+
+        @Override
+        public String put(URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException, ParseException {
+            return send(() -> delegate.put(uri, headers, body));
+        }
+
+        @Override
+        public String delete(URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException, ParseException {
+            return send(() -> delegate.delete(uri, headers, body));
+        }
+    }
+}
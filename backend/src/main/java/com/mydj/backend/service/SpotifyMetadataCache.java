@@ -0,0 +1,59 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.util.TtlCache;
+import com.mydj.backend.util.UriUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.michaelthelin.spotify.model_objects.specification.Artist;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of Spotify track and artist metadata. Tracks are keyed by
+ * canonical track URI, artists by artist id.
+ */
+@Component
+public class SpotifyMetadataCache {
+
+    private final TtlCache<String, Track> tracks;
+    private final TtlCache<String, Artist> artists;
+
+    public SpotifyMetadataCache(@Value("${spotify.cache.maxTracks:5000}") int maxTracks,
+                                @Value("${spotify.cache.maxArtists:5000}") int maxArtists,
+                                @Value("${spotify.cache.ttlMinutes:360}") long ttlMinutes) {
+        this.tracks = new TtlCache<>(maxTracks, ttlMinutes * 60_000L);
+        this.artists = new TtlCache<>(maxArtists, ttlMinutes * 60_000L);
+    }
+
+    public Track getTrack(String trackIdOrUri) {
+        return tracks.get(UriUtils.canonicalTrackUri(trackIdOrUri));
+    }
+
+    public void putTrack(Track track) {
+        if (track == null || track.getUri() == null) return;
+        tracks.put(UriUtils.canonicalTrackUri(track.getUri()), track);
+    }
+
+    public Artist getArtist(String artistId) {
+        return artists.get(artistId);
+    }
+
+    public void putArtist(Artist artist) {
+        if (artist == null) return;
+        artists.put(artist.getId(), artist);
+    }
+
+    public void flush() {
+        tracks.invalidateAll();
+        artists.invalidateAll();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("tracks", tracks.stats());
+        out.put("artists", artists.stats());
+        return out;
+    }
+}
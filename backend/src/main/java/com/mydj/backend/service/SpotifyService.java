@@ -5,10 +5,14 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.mydj.backend.util.DataDirs;
+import com.mydj.backend.util.SingleFlight;
 import com.mydj.backend.util.UriUtils;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import se.michaelthelin.spotify.IHttpManager;
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.SpotifyHttpManager;
 import se.michaelthelin.spotify.enums.AuthorizationScope;
@@ -16,39 +20,59 @@ import se.michaelthelin.spotify.model_objects.credentials.AuthorizationCodeCrede
 import se.michaelthelin.spotify.model_objects.miscellaneous.CurrentlyPlayingContext;
 import se.michaelthelin.spotify.model_objects.miscellaneous.Device;
 import se.michaelthelin.spotify.model_objects.specification.*;
-import se.michaelthelin.spotify.requests.authorization.authorization_code.AuthorizationCodeRefreshRequest;
 import se.michaelthelin.spotify.requests.authorization.authorization_code.AuthorizationCodeRequest;
 import se.michaelthelin.spotify.requests.authorization.authorization_code.AuthorizationCodeUriRequest;
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.file.*;
+import java.nio.file.Path;
 import java.util.*;
-import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import com.google.gson.JsonParser;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.message.BasicHeader;
 
 @Service
 public class SpotifyService {
 
+    private static final int MAX_IDS_PER_LOOKUP = 50;
+    private static final int PLAYLISTS_PER_PAGE = 50;
+    private static final int PLAYLIST_ITEMS_PER_PAGE = 100;
+
     @Value("${spotify.clientId}")     private String clientId;       
     @Value("${spotify.clientSecret}") private String clientSecret;   
     @Value("${spotify.redirectUri}")  private String redirectUri;    
 
+    private final SpotifyHttpTransport transport;
+    private final SpotifyMetadataCache metadataCache;
+    private final SingleFlight<String, Track> trackFlights = new SingleFlight<>();
+    private final SingleFlight<String, Artist> artistFlights = new SingleFlight<>();
+    private final SearchResultCache searchCache;
+    private final SingleFlight<String, List<Map<String, String>>> searchFlights = new SingleFlight<>();
+    private final SpotifyCallScheduler callScheduler;
+    private final ExecutorService pagePool = Executors.newFixedThreadPool(4,
+        Thread.ofPlatform().name("spotify-pages-", 0).daemon(true).factory());
     private SpotifyApi spotifyApi;
 
     // Persistence
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Path dataDir = Paths.get(
-        System.getenv().getOrDefault("MYDJ_DATA_DIR",
-            Paths.get(System.getProperty("user.home"), ".mydj").toString())
-    );
-    private final Path tokenFile = dataDir.resolve("tokens.json");
-
-    private String accessToken;
-    private String refreshToken;
+    private final Path dataDir = DataDirs.dataDir();
+
+    private SpotifyTokenManager tokens;
     private String currentDeviceId;
 
+    private record CachedProfile(long session, User user) {}
+    private volatile CachedProfile profile;
+
+    public SpotifyService(SpotifyHttpTransport transport, SpotifyMetadataCache metadataCache,
+                          SearchResultCache searchCache, SpotifyCallScheduler callScheduler) {
+        this.transport = transport;
+        this.metadataCache = metadataCache;
+        this.searchCache = searchCache;
+        this.callScheduler = callScheduler;
+    }
+
     // Init 
     @PostConstruct
     public void init() {
@@ -56,24 +80,20 @@ public class SpotifyService {
             .setClientId(clientId)
             .setClientSecret(clientSecret)
             .setRedirectUri(SpotifyHttpManager.makeUri(redirectUri))
+            .setHttpManager(transport.httpManager())
             .build();
-        loadTokensIfPresent();
-        if (spotifyApi.getAccessToken() == null || spotifyApi.getAccessToken().isBlank()) {
-            try {
-                initClientCredentials();
-            } catch (Exception e) {
-                System.err.println("Failed to init client credentials: " + e.getMessage());
-            }
-        }
+        this.tokens = new SpotifyTokenManager(spotifyApi, dataDir);
+        tokens.start();
     }
 
-    // Authorization/token management 
-
-    private void initClientCredentials() throws Exception {
-        var creds = spotifyApi.clientCredentials().build().execute();
-        spotifyApi.setAccessToken(creds.getAccessToken());
+    @PreDestroy
+    public void shutdown() {
+        tokens.shutdown();
+        pagePool.shutdownNow();
     }
 
+    // Authorization/token management 
+
     public URI buildAuthorizationUri() {
         AuthorizationCodeUriRequest uriRequest = spotifyApi.authorizationCodeUri()
             .scope(new AuthorizationScope[] {
@@ -94,84 +114,42 @@ public class SpotifyService {
     public void exchangeAuthorizationCode(String code) throws Exception {
         AuthorizationCodeRequest codeRequest = spotifyApi.authorizationCode(code).build();
         AuthorizationCodeCredentials creds = codeRequest.execute();
-
-        this.accessToken  = creds.getAccessToken();
-        this.refreshToken = creds.getRefreshToken();
-
-        spotifyApi.setAccessToken(accessToken);
-        if (refreshToken != null && !refreshToken.isBlank()) {
-            spotifyApi.setRefreshToken(refreshToken);
-        }
-        persistTokens();
+        tokens.installAuthorization(creds.getAccessToken(), creds.getRefreshToken(), creds.getExpiresIn());
     }
 
-    public synchronized void refreshIfNeeded() {
-        try {
-            String rt = spotifyApi.getRefreshToken();
-            if (rt != null && !rt.isBlank()) {
-                AuthorizationCodeRefreshRequest refreshRequest = spotifyApi.authorizationCodeRefresh().build();
-                var creds = refreshRequest.execute();
-                this.accessToken = creds.getAccessToken();
-                spotifyApi.setAccessToken(accessToken);
-                persistTokens();
-                return;
-            }
-
-            if (spotifyApi.getAccessToken() == null || spotifyApi.getAccessToken().isBlank()) {
-                initClientCredentials();
-            }
-        } catch (Exception e) {
-            System.err.println("Failed to refresh token: " + e.getMessage());
-        }
+    /**
+     * Makes sure a usable access token is installed. Cheap on the hot path: the
+     * token manager refreshes ahead of expiry in the background.
+     */
+    public void refreshIfNeeded() {
+        tokens.accessToken();
     }
 
-    private synchronized void persistTokens() {
-        try {
-            Files.createDirectories(dataDir);
-            Path tmp = Files.createTempFile(dataDir, "tokens", ".tmp");
-            Map<String, String> out = new HashMap<>();
-            out.put("accessToken",  accessToken  == null ? "" : accessToken);
-            out.put("refreshToken", refreshToken == null ? "" : refreshToken);
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), out);
-            try {
-                Files.move(tmp, tokenFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
-            } catch (Exception atomicUnsupported) {
-                Files.move(tmp, tokenFile, StandardCopyOption.REPLACE_EXISTING);
-            }
-        } catch (Exception e) {
-            System.err.println("persistTokens failed: " + e.getMessage());
-        }
-    }
+    /**
+     * The signed-in account's profile. Looked up once per login: the cached
+     * value is dropped when new tokens are installed or on logout.
+     */
+    public User getCurrentUserProfile() throws Exception {
+        long session = tokens.session();
+        CachedProfile cached = profile;
+        if (cached != null && cached.session() == session) return cached.user();
+        if (!tokens.hasUserAuth()) throw new IllegalStateException("not authenticated");
 
-    private synchronized void loadTokensIfPresent() {
-        try {
-            if (Files.exists(tokenFile)) {
-                var map = objectMapper.readValue(Files.readString(tokenFile),
-                        new TypeReference<Map<String,String>>() {});
-                accessToken  = map.getOrDefault("accessToken",  "");
-                refreshToken = map.getOrDefault("refreshToken", "");
-                if (!accessToken.isBlank())  spotifyApi.setAccessToken(accessToken);
-                if (!refreshToken.isBlank()) spotifyApi.setRefreshToken(refreshToken);
-            }
-        } catch (Exception e) {
-            System.err.println("loadTokens failed: " + e.getMessage());
-        }
+        refreshIfNeeded();
+        User me = spotifyApi.getCurrentUsersProfile().build().execute();
+        if (tokens.session() == session) profile = new CachedProfile(session, me);
+        return me;
     }
 
-    public se.michaelthelin.spotify.model_objects.specification.User getCurrentUserProfile() throws Exception {
-        refreshIfNeeded();
-        return spotifyApi.getCurrentUsersProfile().build().execute();
+    public String currentOwnerId() throws Exception {
+        return getCurrentUserProfile().getId();
     }
 
-    public synchronized void logout() {
+    public void logout() {
         try {
-            this.accessToken = null;
-            this.refreshToken = null;
             this.currentDeviceId = null;
-            spotifyApi.setAccessToken(null);
-            spotifyApi.setRefreshToken(null);
-            try { Files.deleteIfExists(tokenFile);} catch (Exception ignored) {}
-            persistTokens(); 
+            tokens.clear();
+            this.profile = null;
         } catch (Exception ignored) {}
     }
 
@@ -180,24 +158,47 @@ public class SpotifyService {
     public Paging<Track> searchTracks(String query, int limit) throws Exception {
         refreshIfNeeded();
         int capped = Math.max(1, Math.min(limit, 50));
-        return spotifyApi.searchTracks(query).limit(capped).build().execute();
+        Paging<Track> result = spotifyApi.searchTracks(query).limit(capped).build().execute();
+        // Search returns full track objects; the request that usually follows needs no lookup.
+        if (result.getItems() != null) {
+            for (Track t : result.getItems()) metadataCache.putTrack(t);
+        }
+        return result;
     }
 
+    /**
+     * Search rows for the guest page. Served from the search cache when the
+     * query, or a shorter one it extends, was answered recently; identical
+     * queries in flight at the same time share one Spotify search.
+     */
     public List<Map<String, String>> searchTrackSummaries(String query, int limit) throws Exception {
         int capped = Math.max(1, Math.min(limit, 50));
+        List<Map<String, String>> cached = searchCache.lookup(query, capped);
+        if (cached != null) return cached;
+        return searchFlights.run(SearchResultCache.normalize(query) + "|" + capped,
+            () -> fetchTrackSummaries(query, capped));
+    }
+
+    private List<Map<String, String>> fetchTrackSummaries(String query, int capped) throws Exception {
         Paging<Track> result = searchTracks(query, capped);
         Track[] items = result.getItems();
         List<Map<String, String>> out = new ArrayList<>();
-        if (items == null || items.length == 0) return out;
+        if (items == null || items.length == 0) {
+            searchCache.put(query, capped, out, true);
+            return out;
+        }
 
-        List<String> artistIds = new ArrayList<>();
+        // Every artist on every track, not just the first: classifying a request
+        // needs all of them, and getSeveralArtists leaves them in the metadata cache.
+        Set<String> artistIds = new LinkedHashSet<>();
         for (Track t : items) {
-            if (t.getArtists() != null && t.getArtists().length > 0) {
-                artistIds.add(t.getArtists()[0].getId());
+            if (t.getArtists() == null) continue;
+            for (ArtistSimplified a : t.getArtists()) {
+                if (a != null && a.getId() != null) artistIds.add(a.getId());
             }
         }
 
-        Artist[] artists = getSeveralArtists(artistIds);
+        Artist[] artists = getSeveralArtists(new ArrayList<>(artistIds));
         Map<String, String> idToGenre = new HashMap<>();
         if (artists != null) {
             for (Artist a : artists) {
@@ -232,41 +233,290 @@ public class SpotifyService {
             out.add(row);
         }
 
+        boolean complete = result.getTotal() != null && result.getTotal() <= items.length;
+        searchCache.put(query, capped, out, complete);
         return out;
     }
 
-    private Artist[] getSeveralArtists(List<String> artistIds) throws Exception {
+    public Artist[] getSeveralArtists(List<String> artistIds) throws Exception {
         if (artistIds == null || artistIds.isEmpty()) return new Artist[0];
-        String[] ids = artistIds.toArray(new String[0]);
-        refreshIfNeeded();
-        return spotifyApi.getSeveralArtists(ids).build().execute();
+
+        Map<String, Artist> byId = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String id : artistIds) {
+            if (id == null || byId.containsKey(id)) continue;
+            Artist cached = metadataCache.getArtist(id);
+            if (cached != null) byId.put(id, cached);
+            else missing.add(id);
+        }
+        byId.putAll(loadCoalesced(artistFlights, missing, ids -> {
+            Map<String, Artist> fetched = new HashMap<>();
+            for (List<String> chunk : chunks(ids, MAX_IDS_PER_LOOKUP)) {
+                Artist[] page = spotifyApi.getSeveralArtists(chunk.toArray(new String[0])).build().execute();
+                if (page == null) continue;
+                for (Artist a : page) {
+                    if (a == null) continue;
+                    metadataCache.putArtist(a);
+                    fetched.put(a.getId(), a);
+                }
+            }
+            return fetched;
+        }));
+
+        List<Artist> out = new ArrayList<>(artistIds.size());
+        for (String id : artistIds) {
+            Artist a = byId.get(id);
+            if (a != null) out.add(a);
+        }
+        return out.toArray(new Artist[0]);
     }
 
     public Track getTrack(String trackIdOrUri) throws Exception {
-        refreshIfNeeded();
-        String trackId = UriUtils.extractTrackId(trackIdOrUri);
-        return spotifyApi.getTrack(trackId).build().execute();
+        Track cached = metadataCache.getTrack(trackIdOrUri);
+        if (cached != null) return cached;
+        String uri = UriUtils.canonicalTrackUri(trackIdOrUri);
+        return trackFlights.run(uri, () -> {
+            Track again = metadataCache.getTrack(uri);
+            if (again != null) return again;
+            refreshIfNeeded();
+            Track track = spotifyApi.getTrack(UriUtils.extractTrackId(uri)).build().execute();
+            metadataCache.putTrack(track);
+            return track;
+        });
+    }
+
+    /**
+     * Resolves several tracks at once, in batches of up to 50 ids. The result
+     * is keyed by canonical track URI; tracks Spotify does not know are absent.
+     */
+    public Map<String, Track> getSeveralTracks(Collection<String> trackIdsOrUris) throws Exception {
+        Map<String, Track> out = new LinkedHashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String raw : trackIdsOrUris) {
+            if (raw == null) continue;
+            String uri = UriUtils.canonicalTrackUri(raw);
+            if (out.containsKey(uri)) continue;
+            Track cached = metadataCache.getTrack(uri);
+            out.put(uri, cached);
+            if (cached == null) missing.add(uri);
+        }
+        out.putAll(loadCoalesced(trackFlights, missing, uris -> {
+            Map<String, Track> fetched = new HashMap<>();
+            List<String> ids = uris.stream().map(UriUtils::extractTrackId).toList();
+            for (List<String> chunk : chunks(ids, MAX_IDS_PER_LOOKUP)) {
+                Track[] page = spotifyApi.getSeveralTracks(chunk.toArray(new String[0])).build().execute();
+                if (page == null) continue;
+                for (Track t : page) {
+                    if (t == null || t.getUri() == null) continue;
+                    metadataCache.putTrack(t);
+                    fetched.put(UriUtils.canonicalTrackUri(t.getUri()), t);
+                }
+            }
+            return fetched;
+        }));
+        out.values().removeIf(Objects::isNull);
+        return out;
+    }
+
+    private interface BatchLoader<T> {
+        Map<String, T> load(List<String> keys) throws Exception;
+    }
+
+    /**
+     * Loads the keys nobody else is already loading in one batch, then waits
+     * for the rest. Own keys are settled before waiting on anyone else's, so
+     * two overlapping batches can't wait on each other.
+     */
+    private <T> Map<String, T> loadCoalesced(SingleFlight<String, T> flights, Collection<String> keys,
+                                             BatchLoader<T> batch) throws Exception {
+        if (keys.isEmpty()) return Map.of();
+        Map<String, SingleFlight.Claim<T>> led = new LinkedHashMap<>();
+        Map<String, SingleFlight.Claim<T>> joined = new LinkedHashMap<>();
+        for (String key : keys) {
+            SingleFlight.Claim<T> claim = flights.claim(key);
+            (claim.leader() ? led : joined).put(key, claim);
+        }
+
+        Map<String, T> out = new HashMap<>();
+        if (!led.isEmpty()) {
+            try {
+                refreshIfNeeded();
+                out.putAll(batch.load(new ArrayList<>(led.keySet())));
+            } catch (Throwable e) {
+                led.forEach((key, claim) -> flights.fail(key, claim, e));
+                throw e;
+            }
+            led.forEach((key, claim) -> flights.finish(key, claim, out.get(key)));
+        }
+        for (Map.Entry<String, SingleFlight.Claim<T>> e : joined.entrySet()) {
+            T value = SingleFlight.await(e.getValue().future());
+            if (value != null) out.put(e.getKey(), value);
+        }
+        return out;
+    }
+
+    /**
+     * Genres of all artists on the track, lower-cased and de-duplicated, in
+     * artist order. One batched artist lookup at most.
+     */
+    public List<String> getArtistGenres(Track track) throws Exception {
+        return getArtistGenres(List.of(track)).getOrDefault(UriUtils.canonicalTrackUri(track.getUri()), List.of());
+    }
+
+    /**
+     * Artist genres for many tracks, keyed by canonical track URI. All artists
+     * across the tracks are resolved through batched lookups.
+     */
+    public Map<String, List<String>> getArtistGenres(Collection<Track> tracks) throws Exception {
+        Set<String> artistIds = new LinkedHashSet<>();
+        for (Track t : tracks) {
+            if (t.getArtists() == null) continue;
+            for (ArtistSimplified a : t.getArtists()) {
+                if (a != null && a.getId() != null) artistIds.add(a.getId());
+            }
+        }
+        Map<String, Artist> artists = new HashMap<>();
+        for (Artist a : getSeveralArtists(new ArrayList<>(artistIds))) artists.put(a.getId(), a);
+
+        Map<String, List<String>> out = new LinkedHashMap<>();
+        for (Track t : tracks) {
+            Set<String> genreSet = new LinkedHashSet<>();
+            if (t.getArtists() != null) {
+                for (ArtistSimplified a : t.getArtists()) {
+                    Artist full = (a == null) ? null : artists.get(a.getId());
+                    if (full == null || full.getGenres() == null) continue;
+                    for (String g : full.getGenres()) {
+                        if (g != null && !g.isBlank()) genreSet.add(g.toLowerCase(Locale.ROOT).trim());
+                    }
+                }
+            }
+            out.put(UriUtils.canonicalTrackUri(t.getUri()), new ArrayList<>(genreSet));
+        }
+        return out;
     }
 
     public Artist getArtist(String artistId) throws Exception {
+        Artist cached = metadataCache.getArtist(artistId);
+        if (cached != null) return cached;
+        return artistFlights.run(artistId, () -> {
+            Artist again = metadataCache.getArtist(artistId);
+            if (again != null) return again;
+            refreshIfNeeded();
+            Artist artist = spotifyApi.getArtist(artistId).build().execute();
+            metadataCache.putArtist(artist);
+            return artist;
+        });
+    }
+
+    /** Lookups currently shared between concurrent callers. */
+    public Map<String, Object> flightStats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("tracks", trackFlights.stats());
+        out.put("artists", artistFlights.stats());
+        out.put("searches", searchFlights.stats());
+        return out;
+    }
+
+    public Paging<PlaylistTrack> getPlaylistTracks(String playlistId, int limit) throws Exception {
+        return getPlaylistTracks(playlistId, limit, 0);
+    }
+
+    public Paging<PlaylistTrack> getPlaylistTracks(String playlistId, int limit, int offset) throws Exception {
         refreshIfNeeded();
-        return spotifyApi.getArtist(artistId).build().execute();
+        return spotifyApi.getPlaylistsItems(playlistId).limit(limit).offset(offset).build().execute();
     }
 
-    public Paging<se.michaelthelin.spotify.model_objects.specification.PlaylistTrack> getPlaylistTracks(String playlistId, int limit) throws Exception {
+    /** The playlist's current snapshot id, without its tracks. */
+    public String getPlaylistSnapshotId(String playlistId) throws Exception {
         refreshIfNeeded();
-        return spotifyApi.getPlaylistsItems(playlistId).limit(limit).build().execute();
+        return spotifyApi.getPlaylist(playlistId).fields("snapshot_id").build().execute().getSnapshotId();
     }
 
     public Paging<PlaylistSimplified> getCurrentUserPlaylists(int limit) throws Exception {
+        return getCurrentUserPlaylists(limit, 0);
+    }
+
+    public Paging<PlaylistSimplified> getCurrentUserPlaylists(int limit, int offset) throws Exception {
         refreshIfNeeded();
-        return spotifyApi.getListOfCurrentUsersPlaylists().limit(limit).build().execute();
+        return spotifyApi.getListOfCurrentUsersPlaylists().limit(limit).offset(offset).build().execute();
     }
 
-    public void addTrackToPlaylistByUri(String playlistId, String uri) throws Exception {
+    public interface PageFetcher<T> {
+        Paging<T> fetch(int offset) throws Exception;
+    }
+
+    public interface PageConsumer<T> {
+        void accept(T[] items) throws Exception;
+    }
+
+    /** Every playlist of the signed-in account. */
+    public List<PlaylistSimplified> getAllCurrentUserPlaylists() throws Exception {
+        List<PlaylistSimplified> out = new ArrayList<>();
+        forEachPage(null, PLAYLISTS_PER_PAGE, offset -> getCurrentUserPlaylists(PLAYLISTS_PER_PAGE, offset),
+            items -> out.addAll(Arrays.asList(items)));
+        return out;
+    }
+
+    /** First page of a playlist's items, at the page size {@link #forEachPlaylistTrackPage} uses. */
+    public Paging<PlaylistTrack> getFirstPlaylistTrackPage(String playlistId) throws Exception {
+        return getPlaylistTracks(playlistId, PLAYLIST_ITEMS_PER_PAGE, 0);
+    }
+
+    /**
+     * Hands every item of the playlist to the consumer, page by page in
+     * playlist order. Pass the first page if the caller already has it.
+     */
+    public void forEachPlaylistTrackPage(String playlistId, Paging<PlaylistTrack> first,
+                                         PageConsumer<PlaylistTrack> consumer) throws Exception {
+        forEachPage(first, PLAYLIST_ITEMS_PER_PAGE,
+            offset -> getPlaylistTracks(playlistId, PLAYLIST_ITEMS_PER_PAGE, offset), consumer);
+    }
+
+    /**
+     * Walks a paged listing. Once the first page gives the total, the rest
+     * are requested together on the page pool, in the caller's lane, and
+     * delivered in order as they arrive.
+     */
+    <T> void forEachPage(Paging<T> first, int pageSize, PageFetcher<T> fetcher,
+                         PageConsumer<T> consumer) throws Exception {
+        if (first == null) first = fetcher.fetch(0);
+        T[] items = first.getItems();
+        if (items == null || items.length == 0) return;
+        consumer.accept(items);
+        if (first.getNext() == null || first.getTotal() == null) return;
+
+        SpotifyCallScheduler.Lane lane = callScheduler.currentLane();
+        List<Future<Paging<T>>> rest = new ArrayList<>();
+        for (int offset = items.length; offset < first.getTotal(); offset += pageSize) {
+            int at = offset;
+            rest.add(pagePool.submit(() -> callScheduler.run(lane, () -> fetcher.fetch(at))));
+        }
+        try {
+            for (Future<Paging<T>> f : rest) {
+                Paging<T> page;
+                try {
+                    page = f.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception cause) throw cause;
+                    throw e;
+                }
+                if (page.getItems() != null && page.getItems().length > 0) consumer.accept(page.getItems());
+            }
+        } finally {
+            for (Future<Paging<T>> f : rest) f.cancel(true);
+        }
+    }
+
+    /** Returns the playlist's new snapshot id. */
+    public String addTrackToPlaylistByUri(String playlistId, String uri) throws Exception {
+        return addTracksToPlaylist(playlistId, List.of(uri));
+    }
+
+    /** Appends the tracks in order, at most 100 per call; returns the playlist's new snapshot id. */
+    public String addTracksToPlaylist(String playlistId, List<String> uris) throws Exception {
         refreshIfNeeded();
-        String canonicalUri = UriUtils.canonicalTrackUri(uri);
-        spotifyApi.addItemsToPlaylist(playlistId, new String[]{canonicalUri}).build().execute();
+        String[] canonical = uris.stream().map(UriUtils::canonicalTrackUri).toArray(String[]::new);
+        return spotifyApi.addItemsToPlaylist(playlistId, canonical).build().execute().getSnapshotId();
     }
 
     public void addTrackToPlaylistBySearch(String playlistId, String title) throws Exception {
@@ -370,21 +620,10 @@ public class SpotifyService {
 
     public List<String> fetchAvailableGenreSeeds() {
         try {
-            refreshIfNeeded();
-            String token = spotifyApi.getAccessToken();
-            HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create("https://api.spotify.com/v1/recommendations/available-genre-seeds"))
-                .header("Authorization", "Bearer " + token)
-                .GET().build();
-
-            HttpResponse<String> resp = HttpClient.newHttpClient()
-                .send(req, HttpResponse.BodyHandlers.ofString());
-
-            if (resp.statusCode() != 200) {
-                System.err.println("Failed to fetch genre seeds: " + resp.statusCode() + " / " + resp.body());
-                return Collections.emptyList();
-            }
-            JsonNode root = objectMapper.readTree(resp.body());
+            String body = transport.httpManager().get(
+                URI.create("https://api.spotify.com/v1/recommendations/available-genre-seeds"),
+                bearer());
+            JsonNode root = objectMapper.readTree(body);
             JsonNode arr = root.get("genres");
             return objectMapper.convertValue(arr, new TypeReference<List<String>>() {});
         } catch (Exception e) {
@@ -395,38 +634,53 @@ public class SpotifyService {
 
     // Helpers 
 
+    private static <T> List<List<T>> chunks(List<T> items, int size) {
+        List<List<T>> out = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += size) {
+            out.add(items.subList(i, Math.min(items.size(), i + size)));
+        }
+        return out;
+    }
+
     public String getCurrentDeviceId() { return currentDeviceId; }
     public void setCurrentDeviceId(String id) { this.currentDeviceId = id; }
 
     public String getAccessToken() {
+        return tokens.accessToken();
+    }
+
+    /**
+     * Removes every occurrence of each track; at most 100 per call. With the
+     * snapshot id the playlist was read at, Spotify applies the removal to
+     * that version. Returns the playlist's new snapshot id.
+     */
+    public String removeTracksFromPlaylist(String playlistId, List<String> uris, String snapshotId) throws Exception {
+        JsonArray tracks = new JsonArray();
+        for (String uri : uris) {
+            JsonObject obj = new JsonObject();
+            obj.addProperty("uri", UriUtils.canonicalTrackUri(uri));
+            tracks.add(obj);
+        }
         refreshIfNeeded();
-        return spotifyApi.getAccessToken();
+        var request = spotifyApi.removeItemsFromPlaylist(playlistId, tracks);
+        if (snapshotId != null) request.snapshotId(snapshotId);
+        return request.build().execute().getSnapshotId();
     }
 
-    public void removeItemsFromPlaylist(String playlistId, JsonArray tracks) throws Exception {
-        refreshIfNeeded();
-        spotifyApi.removeItemsFromPlaylist(playlistId, tracks).build().execute();
+    private void sendPlaybackCommand(String method, String path) throws Exception {
+        URI uri = URI.create("https://api.spotify.com/v1/me/player/" + path);
+        IHttpManager http = transport.httpManager();
+        if ("PUT".equalsIgnoreCase(method)) http.put(uri, bearer(), null);
+        else if ("POST".equalsIgnoreCase(method)) http.post(uri, bearer(), null);
+        else if ("DELETE".equalsIgnoreCase(method)) http.delete(uri, bearer(), null);
+        else throw new IllegalArgumentException("Unsupported playback command method: " + method);
     }
 
-    private void sendPlaybackCommand(String method, String path) throws IOException, InterruptedException {
-        refreshIfNeeded();
-        HttpRequest.Builder builder = HttpRequest.newBuilder()
-            .uri(URI.create("https://api.spotify.com/v1/me/player/" + path))
-            .header("Authorization", "Bearer " + spotifyApi.getAccessToken());
-
-        if ("PUT".equalsIgnoreCase(method)) builder.PUT(HttpRequest.BodyPublishers.noBody());
-        else if ("POST".equalsIgnoreCase(method)) builder.POST(HttpRequest.BodyPublishers.noBody());
-        else builder.method(method, HttpRequest.BodyPublishers.noBody());
-
-        HttpResponse<String> resp = HttpClient.newHttpClient()
-            .send(builder.build(), HttpResponse.BodyHandlers.ofString());
-
-        if (resp.statusCode() >= 400) {
-            throw new RuntimeException("Playback command failed: " + resp.statusCode() + " / " + resp.body());
-        }
+    private Header[] bearer() {
+        return new Header[] { new BasicHeader("Authorization", "Bearer " + tokens.accessToken()) };
     }
 
-    public synchronized boolean hasUserAuth() {
-        return refreshToken != null && !refreshToken.isBlank();
+    public boolean hasUserAuth() {
+        return tokens.hasUserAuth();
     }
 }
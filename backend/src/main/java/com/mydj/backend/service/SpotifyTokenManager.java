@@ -0,0 +1,254 @@
+package com.mydj.backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import se.michaelthelin.spotify.SpotifyApi;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the Spotify tokens and keeps the access token fresh. The token is
+ * refreshed once, ahead of its expiry, on a background thread; callers only
+ * read the current value and block solely when it has actually expired, in
+ * which case they all share the same in-flight refresh.
+ */
+class SpotifyTokenManager {
+
+    private static final long REFRESH_AHEAD_MS = 5 * 60_000L;
+    private static final long EXPIRY_SAFETY_MS = 10_000L;
+    private static final long RETRY_DELAY_MS = 30_000L;
+
+    private record Tokens(String accessToken, String refreshToken, long expiresAtMs) {
+        static final Tokens EMPTY = new Tokens(null, null, 0L);
+
+        boolean hasUserAuth() {
+            return refreshToken != null && !refreshToken.isBlank();
+        }
+
+        boolean usableAt(long nowMs) {
+            return accessToken != null && !accessToken.isBlank() && nowMs < expiresAtMs - EXPIRY_SAFETY_MS;
+        }
+    }
+
+    private final SpotifyApi spotifyApi;
+    private final Path dataDir;
+    private final Path tokenFile;
+    private final long retryDelayMs;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("spotify-token-refresh").daemon(true).factory());
+    private final AtomicReference<CompletableFuture<Tokens>> inFlight = new AtomicReference<>();
+    private final AtomicLong session = new AtomicLong();
+
+    private volatile Tokens tokens = Tokens.EMPTY;
+    private ScheduledFuture<?> nextRefresh;
+
+    SpotifyTokenManager(SpotifyApi spotifyApi, Path dataDir) {
+        this(spotifyApi, dataDir, RETRY_DELAY_MS);
+    }
+
+    SpotifyTokenManager(SpotifyApi spotifyApi, Path dataDir, long retryDelayMs) {
+        this.spotifyApi = spotifyApi;
+        this.dataDir = dataDir;
+        this.tokenFile = dataDir.resolve("tokens.json");
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    void start() {
+        loadTokensIfPresent();
+        scheduleRefresh(tokens);
+    }
+
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    // Hot path
+
+    String accessToken() {
+        Tokens current = tokens;
+        if (current.usableAt(System.currentTimeMillis())) return current.accessToken;
+        try {
+            return refresh().join().accessToken;
+        } catch (CompletionException e) {
+            System.err.println("Failed to refresh token: " + rootMessage(e));
+            return tokens.accessToken;
+        }
+    }
+
+    boolean hasUserAuth() {
+        return tokens.hasUserAuth();
+    }
+
+    /**
+     * Identifies the current login. It changes when a new authorization is
+     * installed or the tokens are cleared, but not on a plain refresh, so
+     * anything derived from the signed-in account can be cached against it.
+     */
+    long session() {
+        return session.get();
+    }
+
+    // Token changes
+
+    void installAuthorization(String accessToken, String refreshToken, Integer expiresInSeconds) {
+        Tokens next = new Tokens(accessToken, refreshToken, expiresAt(expiresInSeconds));
+        synchronized (this) {
+            apply(next);
+            session.incrementAndGet();
+        }
+        persistTokens(next);
+        scheduleRefresh(next);
+    }
+
+    void clear() {
+        synchronized (this) {
+            apply(Tokens.EMPTY);
+            session.incrementAndGet();
+            if (nextRefresh != null) nextRefresh.cancel(false);
+        }
+        try { Files.deleteIfExists(tokenFile); } catch (Exception ignored) {}
+        persistTokens(Tokens.EMPTY);
+    }
+
+    /**
+     * Starts a refresh unless one is already running, in which case the caller
+     * joins it.
+     */
+    CompletableFuture<Tokens> refresh() {
+        while (true) {
+            CompletableFuture<Tokens> running = inFlight.get();
+            if (running != null) return running;
+            CompletableFuture<Tokens> mine = new CompletableFuture<>();
+            if (!inFlight.compareAndSet(null, mine)) continue;
+            try {
+                Tokens before = tokens;
+                Tokens after = fetchNewTokens(before);
+                boolean installed;
+                synchronized (this) {
+                    // A login or logout while we were talking to Spotify wins over this refresh.
+                    installed = tokens == before;
+                    if (installed) apply(after);
+                }
+                if (installed) {
+                    if (after.hasUserAuth()) persistTokens(after);
+                    scheduleRefresh(after);
+                }
+                mine.complete(tokens);
+            } catch (Exception e) {
+                mine.completeExceptionally(e);
+                scheduleRetry();
+            } finally {
+                inFlight.compareAndSet(mine, null);
+            }
+            return mine;
+        }
+    }
+
+    private Tokens fetchNewTokens(Tokens current) throws Exception {
+        if (current.hasUserAuth()) {
+            var creds = spotifyApi.authorizationCodeRefresh().build().execute();
+            String rotated = creds.getRefreshToken();
+            String refreshToken = (rotated != null && !rotated.isBlank()) ? rotated : current.refreshToken;
+            return new Tokens(creds.getAccessToken(), refreshToken, expiresAt(creds.getExpiresIn()));
+        }
+        var creds = spotifyApi.clientCredentials().build().execute();
+        return new Tokens(creds.getAccessToken(), null, expiresAt(creds.getExpiresIn()));
+    }
+
+    private void apply(Tokens next) {
+        tokens = next;
+        spotifyApi.setAccessToken(next.accessToken);
+        spotifyApi.setRefreshToken(next.refreshToken);
+    }
+
+    // Scheduling
+
+    private synchronized void scheduleRefresh(Tokens t) {
+        if (scheduler.isShutdown()) return;
+        if (nextRefresh != null) nextRefresh.cancel(false);
+        long delay = Math.max(0L, t.expiresAtMs - REFRESH_AHEAD_MS - System.currentTimeMillis());
+        nextRefresh = scheduler.schedule(this::backgroundRefresh, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void scheduleRetry() {
+        if (scheduler.isShutdown()) return;
+        // A refresh still waiting to run covers it; the one running now (delay <= 0) is the one that failed.
+        if (nextRefresh != null && !nextRefresh.isDone() && nextRefresh.getDelay(TimeUnit.MILLISECONDS) > 0) return;
+        nextRefresh = scheduler.schedule(this::backgroundRefresh, retryDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void backgroundRefresh() {
+        try {
+            refresh().join();
+        } catch (CompletionException e) {
+            System.err.println("Background token refresh failed: " + rootMessage(e));
+        }
+    }
+
+    private static long expiresAt(Integer expiresInSeconds) {
+        int seconds = (expiresInSeconds == null || expiresInSeconds <= 0) ? 3600 : expiresInSeconds;
+        return System.currentTimeMillis() + seconds * 1000L;
+    }
+
+    private static String rootMessage(Throwable t) {
+        Throwable cause = (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
+        return cause.getMessage();
+    }
+
+    // Persistence
+
+    private synchronized void persistTokens(Tokens t) {
+        try {
+            Files.createDirectories(dataDir);
+            Path tmp = Files.createTempFile(dataDir, "tokens", ".tmp");
+            Map<String, String> out = new HashMap<>();
+            out.put("accessToken",  t.accessToken  == null ? "" : t.accessToken);
+            out.put("refreshToken", t.refreshToken == null ? "" : t.refreshToken);
+            out.put("expiresAt",    Long.toString(t.expiresAtMs));
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), out);
+            try {
+                Files.move(tmp, tokenFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (Exception atomicUnsupported) {
+                Files.move(tmp, tokenFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (Exception e) {
+            System.err.println("persistTokens failed: " + e.getMessage());
+        }
+    }
+
+    private synchronized void loadTokensIfPresent() {
+        try {
+            if (Files.exists(tokenFile)) {
+                var map = objectMapper.readValue(Files.readString(tokenFile),
+                        new TypeReference<Map<String,String>>() {});
+                String accessToken  = map.getOrDefault("accessToken",  "");
+                String refreshToken = map.getOrDefault("refreshToken", "");
+                long expiresAtMs;
+                try {
+                    expiresAtMs = Long.parseLong(map.getOrDefault("expiresAt", "0"));
+                } catch (NumberFormatException e) {
+                    expiresAtMs = 0L;
+                }
+                apply(new Tokens(
+                    accessToken.isBlank()  ? null : accessToken,
+                    refreshToken.isBlank() ? null : refreshToken,
+                    expiresAtMs));
+            }
+        } catch (Exception e) {
+            System.err.println("loadTokens failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.util.UriUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Guest search: matches from the DJ's own playlists come straight from the
+ * {@link PlaylistSearchIndex}, and Spotify's results are merged in behind
+ * them. When there are local matches, Spotify gets {@code search.remoteTimeoutMs}
+ * to answer; if it is slower, failing or shedding, the local matches are
+ * returned on their own and the remote search still finishes into the
+ * search cache for the next keystroke.
+ */
+@Service
+public class TrackSearchService {
+
+    private final PlaylistSearchIndex playlistIndex;
+    private final SpotifyService spotifyService;
+    private final SpotifyCallScheduler callScheduler;
+
+    @Value("${search.remoteTimeoutMs:1500}") private long remoteTimeoutMs;
+    @Value("${search.remoteThreads:8}") private int remoteThreads;
+
+    private ThreadPoolExecutor remotePool;
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder localOnly = new LongAdder();
+
+    public TrackSearchService(PlaylistSearchIndex playlistIndex, SpotifyService spotifyService,
+                              SpotifyCallScheduler callScheduler) {
+        this.playlistIndex = playlistIndex;
+        this.spotifyService = spotifyService;
+        this.callScheduler = callScheduler;
+    }
+
+    @PostConstruct
+    public void start() {
+        int n = Math.max(1, remoteThreads);
+        remotePool = new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(n * 8),
+            Thread.ofPlatform().name("search-remote-", 0).daemon(true).factory(),
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        remotePool.shutdownNow();
+    }
+
+    public List<Map<String, String>> search(String query, int limit) throws Exception {
+        searches.increment();
+        int capped = Math.max(1, Math.min(limit, 50));
+        List<Map<String, String>> local = playlistIndex.search(query, capped);
+
+        Future<List<Map<String, String>>> remote;
+        try {
+            remote = remotePool.submit(() -> callScheduler.run(SpotifyCallScheduler.Lane.SEARCH,
+                () -> spotifyService.searchTrackSummaries(query, capped)));
+        } catch (RejectedExecutionException e) {
+            if (!local.isEmpty()) return answerLocally(local);
+            throw new SpotifyCallScheduler.ShedException(SpotifyCallScheduler.Lane.SEARCH, 1_000L);
+        }
+
+        try {
+            List<Map<String, String>> rows = local.isEmpty() ? remote.get() : remote.get(remoteTimeoutMs, TimeUnit.MILLISECONDS);
+            return merge(local, rows, capped);
+        } catch (TimeoutException e) {
+            return answerLocally(local);
+        } catch (ExecutionException e) {
+            if (!local.isEmpty()) return answerLocally(local);
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+    }
+
+    private List<Map<String, String>> answerLocally(List<Map<String, String>> local) {
+        localOnly.increment();
+        return local;
+    }
+
+    /** Playlist matches first, then Spotify's in its order, one row per track. */
+    static List<Map<String, String>> merge(List<Map<String, String>> local, List<Map<String, String>> remote, int limit) {
+        Map<String, Map<String, String>> byUri = new LinkedHashMap<>();
+        for (Map<String, String> row : local) byUri.putIfAbsent(UriUtils.canonicalTrackUri(row.get("uri")), row);
+        for (Map<String, String> row : remote) {
+            String uri = row.get("uri");
+            if (uri == null) continue;
+            String key = UriUtils.canonicalTrackUri(uri);
+            // Spotify's row knows the genre; keep the playlist match's place.
+            if (byUri.containsKey(key)) byUri.put(key, row);
+            else if (byUri.size() < limit) byUri.put(key, row);
+        }
+        return new ArrayList<>(byUri.values());
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("searches", searches.sum());
+        out.put("localOnly", localOnly.sum());
+        out.put("remoteTimeoutMs", remoteTimeoutMs);
+        out.put("index", playlistIndex.stats());
+        return out;
+    }
+}
@@ -0,0 +1,15 @@
+package com.mydj.backend.util;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class DataDirs {
+
+    /** Where the backend keeps its state: MYDJ_DATA_DIR, or ~/.mydj by default. */
+    public static Path dataDir() {
+        return Paths.get(
+            System.getenv().getOrDefault("MYDJ_DATA_DIR",
+                Paths.get(System.getProperty("user.home"), ".mydj").toString())
+        );
+    }
+}
@@ -0,0 +1,91 @@
+package com.mydj.backend.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller does the work,
+ * everyone arriving while it is in flight waits for and shares its result.
+ * Nothing is remembered once the load finishes; caching is the caller's job.
+ */
+public class SingleFlight<K, V> {
+
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load() throws Exception;
+    }
+
+    /** A caller's stake in a key; the leader must {@link #finish} or {@link #fail} it. */
+    public record Claim<V>(CompletableFuture<V> future, boolean leader) {}
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    public V run(K key, Loader<V> loader) throws Exception {
+        Claim<V> claim = claim(key);
+        if (!claim.leader()) return await(claim.future());
+        V value;
+        try {
+            value = loader.load();
+        } catch (Exception | Error e) {
+            fail(key, claim, e);
+            throw e;
+        }
+        finish(key, claim, value);
+        return value;
+    }
+
+    /**
+     * Joins the load in flight for the key, or becomes its leader. Lets one
+     * caller lead several keys and load them in a single batch.
+     */
+    public Claim<V> claim(K key) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            shared.increment();
+            return new Claim<>(existing, false);
+        }
+        loads.increment();
+        return new Claim<>(mine, true);
+    }
+
+    public void finish(K key, Claim<V> claim, V value) {
+        inFlight.remove(key, claim.future());
+        claim.future().complete(value);
+    }
+
+    public void fail(K key, Claim<V> claim, Throwable error) {
+        inFlight.remove(key, claim.future());
+        claim.future().completeExceptionally(error);
+    }
+
+    /** Waits for a shared load, rethrowing the leader's failure as is. */
+    public static <V> V await(CompletableFuture<V> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception ex) throw ex;
+            if (cause instanceof Error err) throw err;
+            throw e;
+        }
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("inFlight", inFlight());
+        out.put("loads", loads.sum());
+        out.put("shared", shared.sum());
+        return out;
+    }
+}
@@ -0,0 +1,87 @@
+package com.mydj.backend.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded LRU cache whose entries also expire after a fixed time to live.
+ */
+public class TtlCache<K, V> {
+
+    private record Entry<V>(V value, long expiresAtMs) {}
+
+    private final int maxSize;
+    private final long ttlMs;
+    private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(64, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public TtlCache(int maxSize, long ttlMs) {
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlMs = ttlMs;
+    }
+
+    public V get(K key) {
+        if (key == null) return null;
+        synchronized (this) {
+            Entry<V> e = map.get(key);
+            if (e != null && e.expiresAtMs > System.currentTimeMillis()) {
+                hits.increment();
+                return e.value;
+            }
+            if (e != null) {
+                map.remove(key);
+                expirations.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(K key, V value) {
+        if (key == null || value == null) return;
+        synchronized (this) {
+            map.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMs));
+            if (map.size() > maxSize) {
+                Iterator<K> eldest = map.keySet().iterator();
+                while (map.size() > maxSize && eldest.hasNext()) {
+                    eldest.next();
+                    eldest.remove();
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        map.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public Map<String, Object> stats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("size", size());
+        out.put("maxSize", maxSize);
+        out.put("ttlSeconds", ttlMs / 1000);
+        out.put("hits", h);
+        out.put("misses", m);
+        out.put("hitRatio", (h + m) == 0 ? 0.0 : (double) h / (h + m));
+        out.put("evictions", evictions.sum());
+        out.put("expirations", expirations.sum());
+        return out;
+    }
+}
@@ -46,6 +46,10 @@ async function searchTrack() {
       headers: { 'Accept': 'application/json' },
       signal: activeCtrl.signal
     });
+    if (res.status === 503) {
+      showToast('Lots of people searching right now. Try again in a moment.', true);
+      return;
+    }
     if (!res.ok) {
       console.error('search failed', res.status, await res.text());
       showToast('Search failed. Try again.', true);
@@ -133,12 +137,22 @@ async function submitRequest(trackUri) {
       headers: { 'Content-Type':'application/json' },
       body: JSON.stringify({ uri: trackUri })
     });
-    const text = await res.text();
+    if (res.status === 429) {
+      const wait = parseInt(res.headers.get('Retry-After') || '5', 10);
+      showToast(`Lots of requests right now. Try again in ${wait}s.`, true);
+      return;
+    }
     if (!res.ok) {
-      console.error(text);
+      console.error(await res.text());
       showToast('Request failed. Try again.', true);
+      return;
+    }
+    const ticket = await res.json();
+    if (ticket.status === 'duplicate') {
+      showToast('Already requested!');
     } else {
       showToast('Requested! Thanks.');
+      if (ticket.status !== 'added') watchRequest(ticket.id);
     }
   } catch (e) {
     console.error(e);
@@ -146,6 +160,24 @@ async function submitRequest(trackUri) {
   }
 }
 
+// The request is enriched in the background; only speak up again if it failed.
+async function watchRequest(id, attempt = 0) {
+  if (attempt >= 10) return;
+  await new Promise(r => setTimeout(r, 500 * (attempt + 1)));
+  try {
+    const res = await fetch(`/request/${encodeURIComponent(id)}`, { headers: { 'Accept': 'application/json' } });
+    if (!res.ok) return;
+    const ticket = await res.json();
+    if (ticket.status === 'failed') {
+      showToast('Request failed. Try again.', true);
+    } else if (ticket.status === 'queued' || ticket.status === 'processing') {
+      watchRequest(id, attempt + 1);
+    }
+  } catch (e) {
+    console.error(e);
+  }
+}
+
 let toastTimer;
 function showToast(msg, isError=false) {
   clearTimeout(toastTimer);
@@ -3,7 +3,8 @@ package com.mydj.backend;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// The journal lives in the real data directory (~/.mydj by default); tests must leave it alone.
+@SpringBootTest(properties = { "mydj.journal.enabled=false", "playlistIndex.enabled=false" })
 class BackendApplicationTests {
 
 	@Test
@@ -0,0 +1,115 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.model.PlaybackStateDTO;
+import com.mydj.backend.model.RequestRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AutoDjServiceTests {
+
+	private static PlaybackStateDTO playing(String id, int progressMs) {
+		PlaybackStateDTO s = new PlaybackStateDTO("Song " + id, "Artist", true, progressMs, 200_000, 50, null);
+		s.setTrackUri("spotify:track:" + id);
+		return s;
+	}
+
+	private static SpotifyService spotifyWithPlaylist() throws Exception {
+		SpotifyService spotify = mock(SpotifyService.class);
+		when(spotify.hasUserAuth()).thenReturn(true);
+		when(spotify.currentOwnerId()).thenReturn("dj");
+		doAnswer(inv -> {
+			PlaylistTrack[] items = new PlaylistTrack[4];
+			for (int i = 0; i < 4; i++) {
+				items[i] = new PlaylistTrack.Builder().setTrack(new Track.Builder().setUri("spotify:track:p" + i).build()).build();
+			}
+			inv.<SpotifyService.PageConsumer<PlaylistTrack>>getArgument(2).accept(items);
+			return null;
+		}).when(spotify).forEachPlaylistTrackPage(eq("list"), isNull(), any());
+		return spotify;
+	}
+
+	private static RequestQueueService queuesWithRequest() {
+		RequestQueueService queues = mock(RequestQueueService.class);
+		when(queues.getValid("dj")).thenReturn(List.of(new RequestRecord("Req", "Guest", "pop", false, "spotify:track:r1", true)));
+		return queues;
+	}
+
+	private static AutoDjService autoDj(SpotifyService spotify, PlaybackStateService playback, RequestQueueService queues) {
+		AutoDjService dj = new AutoDjService(spotify, playback, queues);
+		ReflectionTestUtils.setField(dj, "leadSeconds", 30L);
+		dj.shutdown(); // drive step() by hand
+		return dj;
+	}
+
+	@Test
+	void queuesOneTrackPerStepOnlyNearTheEndAndOnlyUpToDepth() throws Exception {
+		SpotifyService spotify = spotifyWithPlaylist();
+		PlaybackStateService playback = mock(PlaybackStateService.class);
+		RequestQueueService queues = queuesWithRequest();
+		AutoDjService dj = autoDj(spotify, playback, queues);
+		dj.enable("dj", "list", 2, true);
+
+		when(playback.current()).thenReturn(playing("p1", 60_000));
+		assertEquals(15_000, dj.step(), "mid-track: sleep, queue nothing");
+		verify(spotify, never()).queue(any(), any());
+
+		when(playback.current()).thenReturn(playing("p1", 180_000));
+		assertEquals(1_000, dj.step());
+		assertEquals(1_000, dj.step());
+		assertTrue(dj.step() > 1_000, "two of ours are waiting");
+		verify(spotify).queue("spotify:track:r1", Optional.empty());
+		verify(spotify).queue("spotify:track:p2", Optional.empty());
+		verify(queues).removeByUri("dj", "spotify:track:r1");
+
+		// The request starts playing: one slot frees up, filled near the end of it.
+		when(queues.getValid("dj")).thenReturn(List.of());
+		when(playback.current()).thenReturn(playing("r1", 175_000));
+		assertEquals(1_000, dj.step());
+		verify(spotify).queue("spotify:track:p3", Optional.empty());
+		verify(spotify, times(3)).queue(any(), any());
+	}
+
+	@Test
+	void keepsTheRequestWhenQueueingFails() throws Exception {
+		SpotifyService spotify = spotifyWithPlaylist();
+		doThrow(new IllegalStateException("No active device")).doNothing().when(spotify).queue(any(), any());
+		PlaybackStateService playback = mock(PlaybackStateService.class);
+		when(playback.current()).thenReturn(playing("p1", 180_000));
+		RequestQueueService queues = queuesWithRequest();
+		AutoDjService dj = autoDj(spotify, playback, queues);
+		dj.enable("dj", "list", 2, true);
+
+		assertThrows(IllegalStateException.class, dj::step);
+		verify(queues, never()).removeByUri(any(), any());
+
+		assertEquals(1_000, dj.step());
+		verify(spotify, times(2)).queue("spotify:track:r1", Optional.empty());
+		verify(queues).removeByUri("dj", "spotify:track:r1");
+	}
+
+	@Test
+	void reEnablingKeepsWhatIsAlreadyQueued() throws Exception {
+		SpotifyService spotify = spotifyWithPlaylist();
+		PlaybackStateService playback = mock(PlaybackStateService.class);
+		when(playback.current()).thenReturn(playing("p1", 180_000));
+		AutoDjService dj = autoDj(spotify, playback, mock(RequestQueueService.class));
+		dj.enable("dj", "list", 2, false);
+		dj.step();
+		dj.step();
+
+		// The desktop re-sends its settings on every playlist change.
+		dj.enable("dj", "list", 2, false);
+		assertTrue(dj.step() > 1_000, "the two already waiting still count");
+		verify(spotify, times(2)).queue(any(), any());
+		assertEquals(2L, dj.status("dj").get("queuedTotal"));
+	}
+}
@@ -0,0 +1,86 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.model.PlaybackStateDTO;
+import org.junit.jupiter.api.Test;
+import se.michaelthelin.spotify.model_objects.miscellaneous.CurrentlyPlayingContext;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PlaybackStateServiceTests {
+
+	private static CurrentlyPlayingContext playing(String id, int progressMs) {
+		Track track = new Track.Builder()
+			.setName("Song " + id)
+			.setUri("spotify:track:" + id)
+			.setDurationMs(200_000)
+			.setArtists(new ArtistSimplified.Builder().setName("Artist").build())
+			.build();
+		return new CurrentlyPlayingContext.Builder()
+			.setIs_playing(true)
+			.setProgress_ms(progressMs)
+			.setItem(track)
+			.build();
+	}
+
+	@Test
+	void servesRepeatedReadsFromOneSpotifyCall() throws Exception {
+		SpotifyService spotify = mock(SpotifyService.class);
+		when(spotify.hasUserAuth()).thenReturn(true);
+		when(spotify.currentOwnerId()).thenReturn("dj");
+		when(spotify.getCurrentPlayback()).thenReturn(playing("1", 10_000));
+
+		PlaybackStateService playback = new PlaybackStateService(spotify, new SpotifyCallScheduler(10, 20));
+		PlaybackStateDTO first = playback.current();
+		for (int i = 0; i < 50; i++) playback.current();
+		PlaybackStateDTO last = playback.current();
+
+		verify(spotify, times(1)).getCurrentPlayback();
+		assertEquals("spotify:track:1", first.getTrackUri());
+		assertTrue(last.getProgressMs() >= first.getProgressMs(), "progress is extrapolated while playing");
+		assertTrue(last.getTimestampMs() >= first.getTimestampMs());
+	}
+
+	@Test
+	void reportsNothingWithoutSignedInAccount() throws Exception {
+		SpotifyService spotify = mock(SpotifyService.class);
+		when(spotify.hasUserAuth()).thenReturn(false);
+
+		assertNull(new PlaybackStateService(spotify, new SpotifyCallScheduler(10, 20)).current());
+		verify(spotify, never()).getCurrentPlayback();
+	}
+
+	private static PlaybackStateDTO state(boolean playing, int progressMs, int durationMs, long atMs) {
+		PlaybackStateDTO s = new PlaybackStateDTO("Song", "Artist", playing, progressMs, durationMs, 50, "device");
+		s.setTimestampMs(atMs);
+		return s;
+	}
+
+	@Test
+	void pollsTightlyOnlyNearTheEndOfTheTrack() {
+		long now = 1_000_000L;
+		assertEquals(5_000, PlaybackStateService.nextDelayMs(state(true, 10_000, 240_000, now), 0, now));
+		assertEquals(20_000, PlaybackStateService.nextDelayMs(state(true, 10_000, 240_000, now), 5, now));
+		// Never sleeps past the start of the end window...
+		assertEquals(3_500, PlaybackStateService.nextDelayMs(state(true, 232_000, 240_000, now), 5, now));
+		// ...and inside it, wakes just after the predicted change.
+		assertEquals(3_500, PlaybackStateService.nextDelayMs(state(true, 237_000, 240_000, now), 0, now));
+		assertEquals(30_000, PlaybackStateService.nextDelayMs(state(false, 10_000, 240_000, now), 9, now));
+	}
+
+	@Test
+	void fourMinuteTrackNeedsAnOrderOfMagnitudeFewerPolls() {
+		long start = 0L;
+		long now = start;
+		int polls = 0;
+		int unchanged = 0;
+		while (now < start + 240_000L) {
+			polls++;
+			PlaybackStateDTO seen = state(true, (int) (now - start), 240_000, now);
+			now += PlaybackStateService.nextDelayMs(seen, unchanged++, now);
+		}
+		assertTrue(polls <= 24, "fixed 1s polling would take 240 polls, took " + polls);
+	}
+}
@@ -0,0 +1,57 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.util.SingleFlight;
+import org.junit.jupiter.api.Test;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PlaylistAddCoalescerTests {
+
+	private static SpotifyService spotifyWith(String... ids) throws Exception {
+		SpotifyService spotify = mock(SpotifyService.class);
+		when(spotify.getPlaylistSnapshotId("p")).thenReturn("s1");
+		doAnswer(inv -> {
+			PlaylistTrack[] items = new PlaylistTrack[ids.length];
+			for (int i = 0; i < ids.length; i++) {
+				items[i] = new PlaylistTrack.Builder().setTrack(new Track.Builder().setUri("spotify:track:" + ids[i]).build()).build();
+			}
+			inv.<SpotifyService.PageConsumer<PlaylistTrack>>getArgument(2).accept(items);
+			return null;
+		}).when(spotify).forEachPlaylistTrackPage(eq("p"), isNull(), any());
+		return spotify;
+	}
+
+	@Test
+	void addsWithinTheWindowGoOutAsOneOrderedCall() throws Exception {
+		SpotifyService spotify = spotifyWith("a");
+		when(spotify.addTracksToPlaylist(eq("p"), anyList())).thenReturn("s2");
+		PlaylistAddCoalescer adds = new PlaylistAddCoalescer(spotify, new PlaylistMembership(spotify, 30), 100);
+
+		CompletableFuture<PlaylistAddCoalescer.Result> first = adds.add("p", "spotify:track:c");
+		List<CompletableFuture<PlaylistAddCoalescer.Result>> rest = adds.addAll("p", List.of("spotify:track:a", "spotify:track:b"));
+
+		assertEquals(PlaylistAddCoalescer.Result.DUPLICATE, rest.get(0).getNow(null), "settled without Spotify");
+		assertEquals(PlaylistAddCoalescer.Result.ADDED, SingleFlight.await(first));
+		assertEquals(PlaylistAddCoalescer.Result.ADDED, SingleFlight.await(rest.get(1)));
+		verify(spotify, times(1)).addTracksToPlaylist("p", List.of("spotify:track:c", "spotify:track:b"));
+		adds.shutdown();
+	}
+
+	@Test
+	void aFailedCallFailsItsAddsAndLetsThemBeRetried() throws Exception {
+		SpotifyService spotify = spotifyWith();
+		when(spotify.addTracksToPlaylist(eq("p"), anyList())).thenThrow(new IllegalStateException("boom")).thenReturn("s2");
+		PlaylistAddCoalescer adds = new PlaylistAddCoalescer(spotify, new PlaylistMembership(spotify, 30), 0);
+
+		assertThrows(IllegalStateException.class, () -> SingleFlight.await(adds.add("p", "spotify:track:x")));
+		assertEquals(PlaylistAddCoalescer.Result.ADDED, SingleFlight.await(adds.add("p", "spotify:track:x")));
+		adds.shutdown();
+	}
+}
@@ -0,0 +1,67 @@
+package com.mydj.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PlaylistCleanerTests {
+
+	private static PlaylistTrack item(int n) {
+		return new PlaylistTrack.Builder().setTrack(new Track.Builder().setUri("spotify:track:t" + n).build()).build();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void removesEveryDistinctTrackInChunksOfAHundred() throws Exception {
+		SpotifyService spotify = mock(SpotifyService.class);
+		when(spotify.getPlaylistSnapshotId("p")).thenReturn("s1");
+		doAnswer(inv -> {
+			SpotifyService.PageConsumer<PlaylistTrack> consumer = inv.getArgument(2);
+			for (int page = 0; page < 3; page++) {
+				PlaylistTrack[] items = new PlaylistTrack[100];
+				// the last page repeats tracks from the first
+				for (int i = 0; i < 100; i++) items[i] = item(page == 2 ? i % 50 : page * 100 + i);
+				consumer.accept(items);
+			}
+			return null;
+		}).when(spotify).forEachPlaylistTrackPage(eq("p"), isNull(), any());
+		Set<String> removed = new HashSet<>();
+		when(spotify.removeTracksFromPlaylist(eq("p"), anyList(), eq("s1"))).thenAnswer(inv -> {
+			List<String> chunk = inv.getArgument(1);
+			assertTrue(chunk.size() <= 100);
+			synchronized (removed) {
+				for (String uri : chunk) assertTrue(removed.add(uri), "removed twice: " + uri);
+			}
+			return "s2";
+		});
+
+		PlaylistCleaner cleaner = new PlaylistCleaner(spotify, new PlaylistMembership(spotify, 30), new SpotifyCallScheduler(10, 20));
+		ReflectionTestUtils.setField(cleaner, "concurrency", 3);
+		cleaner.start();
+		List<Integer> progress = new ArrayList<>();
+		AtomicInteger read = new AtomicInteger();
+
+		int n = cleaner.clear("p", new PlaylistCleaner.Progress() {
+			@Override public void read(int tracks) { read.set(tracks); }
+			@Override public void removed(int done, int total) { progress.add(done); }
+		});
+
+		assertEquals(200, n);
+		assertEquals(200, read.get());
+		assertEquals(200, removed.size());
+		assertEquals(List.of(100, 200), progress);
+		verify(spotify, times(2)).removeTracksFromPlaylist(eq("p"), anyList(), eq("s1"));
+		cleaner.shutdown();
+	}
+}
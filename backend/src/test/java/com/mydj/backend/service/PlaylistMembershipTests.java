@@ -0,0 +1,94 @@
+package com.mydj.backend.service;
+
+import org.junit.jupiter.api.Test;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PlaylistMembershipTests {
+
+	private static PlaylistTrack item(String id) {
+		return new PlaylistTrack.Builder().setTrack(new Track.Builder().setUri("spotify:track:" + id).build()).build();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void readsAPlaylistOnceAndRefusesTracksItAlreadyHas() throws Exception {
+		SpotifyService spotify = mock(SpotifyService.class);
+		when(spotify.getPlaylistSnapshotId("p")).thenReturn("s1");
+		doAnswer(inv -> {
+			inv.<SpotifyService.PageConsumer<PlaylistTrack>>getArgument(2).accept(new PlaylistTrack[] { item("a"), item("b") });
+			return null;
+		}).when(spotify).forEachPlaylistTrackPage(eq("p"), isNull(), any());
+		PlaylistMembership membership = new PlaylistMembership(spotify, 30);
+
+		assertFalse(membership.claim("p", "spotify:track:a"));
+		assertTrue(membership.claim("p", "https://open.spotify.com/track/c?si=x"));
+		assertFalse(membership.claim("p", "spotify:track:c"), "a second add of the same track");
+
+		membership.release("p", "spotify:track:c");
+		assertTrue(membership.claim("p", "spotify:track:c"), "a failed add can be retried");
+
+		membership.removed("p", "s2", List.of("spotify:track:a"));
+		assertTrue(membership.claim("p", "spotify:track:a"));
+
+		verify(spotify, times(1)).forEachPlaylistTrackPage(eq("p"), isNull(), any());
+		assertEquals(1L, membership.stats().get("loads"));
+	}
+
+	@Test
+	void takesEveryFullReadAndRechecksTheSnapshotBeforeRefusing() throws Exception {
+		SpotifyService spotify = mock(SpotifyService.class);
+		when(spotify.getPlaylistSnapshotId("p")).thenReturn("s1");
+		doAnswer(inv -> {
+			inv.<SpotifyService.PageConsumer<PlaylistTrack>>getArgument(2).accept(new PlaylistTrack[] { item("a"), item("b") });
+			return null;
+		}).when(spotify).forEachPlaylistTrackPage(eq("p"), isNull(), any());
+		PlaylistMembership membership = new PlaylistMembership(spotify, 0);
+
+		// Our add came back at s2, which also holds the DJ removing "b" in the Spotify app.
+		assertTrue(membership.claim("p", "spotify:track:c"));
+		membership.added("p", "s2");
+		membership.replace("p", "s2", List.of("spotify:track:a", "spotify:track:c"), membership.readStarted());
+		assertTrue(membership.claim("p", "spotify:track:b"), "a read at the stored id still replaces the set");
+
+		// "a" is removed outside the app: the id moves, and the refusal is re-checked.
+		when(spotify.getPlaylistSnapshotId("p")).thenReturn("s3");
+		doAnswer(inv -> {
+			inv.<SpotifyService.PageConsumer<PlaylistTrack>>getArgument(2).accept(new PlaylistTrack[] { item("b"), item("c") });
+			return null;
+		}).when(spotify).forEachPlaylistTrackPage(eq("p"), isNull(), any());
+		assertTrue(membership.claim("p", "spotify:track:a"));
+		assertFalse(membership.claim("p", "spotify:track:c"), "unchanged id: the refusal stands");
+		assertEquals(1L, membership.stats().get("staleReloads"));
+	}
+
+	@Test
+	void aReadThatOverlapsOurOwnChangesKeepsThem() throws Exception {
+		SpotifyService spotify = mock(SpotifyService.class);
+		when(spotify.getPlaylistSnapshotId("p")).thenReturn("s1");
+		doAnswer(inv -> {
+			inv.<SpotifyService.PageConsumer<PlaylistTrack>>getArgument(2).accept(new PlaylistTrack[] { item("a"), item("b") });
+			return null;
+		}).when(spotify).forEachPlaylistTrackPage(eq("p"), isNull(), any());
+		PlaylistMembership membership = new PlaylistMembership(spotify, 30);
+		assertTrue(membership.claim("p", "spotify:track:c"));
+
+		// The tracks endpoint starts reading; meanwhile "d" is added and "a" removed by us.
+		long readStartedAt = membership.readStarted();
+		assertTrue(membership.claim("p", "spotify:track:d"));
+		membership.added("p", "s2");
+		membership.removed("p", "s3", List.of("spotify:track:a"));
+		// What the read saw: "c" already in, "d" not yet, "a" not yet gone.
+		membership.replace("p", "s1", List.of("spotify:track:a", "spotify:track:b", "spotify:track:c"), readStartedAt);
+
+		assertFalse(membership.claim("p", "spotify:track:d"), "the add made during the read still counts");
+		assertTrue(membership.claim("p", "spotify:track:a"), "so does the removal");
+		assertFalse(membership.claim("p", "spotify:track:c"));
+	}
+}
@@ -0,0 +1,96 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.service.PlaylistSearchIndex.Doc;
+import com.mydj.backend.service.PlaylistSearchIndex.Index;
+import org.junit.jupiter.api.Test;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistSimplified;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PlaylistSearchIndexTests {
+
+	private static Doc doc(String id, String name, String artist) {
+		return new Doc("spotify:track:" + id, name, artist, null, null);
+	}
+
+	private static final Index INDEX = Index.build(List.of(
+		doc("1", "Here Comes the Sun", "The Beatles"),
+		doc("2", "Sunflower", "Post Malone"),
+		doc("3", "Halo", "Beyoncé"),
+		doc("4", "Walking on Sunshine", "Katrina and the Waves"),
+		doc("5", "Supercalifragilisticexpialidocious", "Julie Andrews")));
+
+	private static List<String> ids(List<Doc> docs) {
+		return docs.stream().map(d -> d.uri().substring("spotify:track:".length())).toList();
+	}
+
+	@Test
+	void matchesWordPrefixesAcrossTitleAndArtist() {
+		assertEquals(List.of("1", "2", "4"), ids(INDEX.search("sun", 10)));
+		assertEquals(List.of("1"), ids(INDEX.search("beatles sun", 10)));
+		assertEquals(List.of("3"), ids(INDEX.search("BEYONCE", 10)), "accents are folded");
+		assertEquals(List.of(), ids(INDEX.search("moon", 10)));
+	}
+
+	@Test
+	void wholeWordsRankFirstAndLongWordsAreVerified() {
+		assertEquals("1", ids(INDEX.search("sun", 10)).get(0));
+		assertEquals(List.of("5"), ids(INDEX.search("supercalifragilistic", 10)));
+		assertEquals(List.of(), ids(INDEX.search("supercalifragilxxx", 10)));
+		assertEquals(1, INDEX.search("sun", 1).size());
+	}
+
+	@Test
+	void mergeKeepsPlaylistMatchesFirstAndDropsDuplicates() {
+		List<Map<String, String>> local = List.of(Map.of("uri", "spotify:track:1", "genre", "unknown"));
+		List<Map<String, String>> remote = List.of(
+			Map.of("uri", "spotify:track:2", "genre", "pop"),
+			Map.of("uri", "spotify:track:1", "genre", "rock"),
+			Map.of("uri", "spotify:track:3", "genre", "pop"));
+
+		List<Map<String, String>> merged = TrackSearchService.merge(local, remote, 2);
+
+		assertEquals(List.of("spotify:track:1", "spotify:track:2"), merged.stream().map(r -> r.get("uri")).toList());
+		assertEquals("rock", merged.get(0).get("genre"));
+	}
+
+	@Test
+	void aFailedRefreshStillIndexesWhatItReadAndDropsTheLastLogin() throws Exception {
+		SpotifyService spotify = mock(SpotifyService.class);
+		when(spotify.hasUserAuth()).thenReturn(true);
+		when(spotify.currentOwnerId()).thenReturn("dj1");
+		when(spotify.getAllCurrentUserPlaylists()).thenReturn(List.of(
+			new PlaylistSimplified.Builder().setId("old").setSnapshotId("s1").build()));
+		doAnswer(inv -> {
+			Track t = new Track.Builder().setUri("spotify:track:" + inv.getArgument(0)).setName(inv.getArgument(0) + " song")
+				.setArtists(new ArtistSimplified.Builder().setName("Someone").build()).build();
+			inv.<SpotifyService.PageConsumer<PlaylistTrack>>getArgument(2).accept(
+				new PlaylistTrack[] { new PlaylistTrack.Builder().setTrack(t).build() });
+			return null;
+		}).when(spotify).forEachPlaylistTrackPage(any(), isNull(), any());
+		PlaylistSearchIndex index = new PlaylistSearchIndex(spotify, null, new SpotifyCallScheduler(10, 20));
+		index.refresh();
+		assertEquals(1, index.search("old", 10).size());
+
+		// A new DJ logs in, and reading their second playlist fails.
+		when(spotify.currentOwnerId()).thenReturn("dj2");
+		when(spotify.getAllCurrentUserPlaylists()).thenReturn(List.of(
+			new PlaylistSimplified.Builder().setId("new").setSnapshotId("s1").build(),
+			new PlaylistSimplified.Builder().setId("broken").setSnapshotId("s1").build()));
+		doThrow(new IOException("boom")).when(spotify).forEachPlaylistTrackPage(eq("broken"), isNull(), any());
+		assertThrows(IOException.class, index::refresh);
+
+		assertEquals(List.of(), index.search("old", 10), "the previous DJ's playlists are gone");
+		assertEquals(1, index.search("new", 10).size());
+		index.shutdown();
+	}
+}
@@ -0,0 +1,39 @@
+package com.mydj.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaylistTrackCacheTests {
+
+	@Test
+	void entriesOnlyAnswerForTheSnapshotTheyWereReadAt() {
+		PlaylistTrackCache cache = new PlaylistTrackCache(10, 60, 512);
+		byte[] json = "[{\"name\":\"a\"}]".getBytes(StandardCharsets.UTF_8);
+		cache.put("p1", "snap-1", json);
+
+		assertArrayEquals(json, cache.get("p1", "snap-1"));
+		assertNull(cache.get("p1", "snap-2"), "the playlist changed since it was read");
+		assertNull(cache.get("p2", "snap-1"));
+
+		cache.put("p1", "snap-2", "[]".getBytes(StandardCharsets.UTF_8));
+		assertNull(cache.get("p1", "snap-1"));
+		assertEquals("[]", new String(cache.get("p1", "snap-2"), StandardCharsets.UTF_8));
+		assertEquals(2L, cache.stats().get("hits"));
+	}
+
+	@Test
+	void responsesOverTheEntryLimitAreNotKept() {
+		PlaylistTrackCache cache = new PlaylistTrackCache(10, 60, 1);
+		cache.put("p1", "snap-1", "[]".getBytes(StandardCharsets.UTF_8));
+		cache.put("p1", "snap-2", new byte[2048]);
+		assertNull(cache.get("p1", "snap-2"));
+		assertNull(cache.get("p1", "snap-1"), "the older read is dropped too");
+
+		cache.put("p2", "snap-1", null); // the copy was abandoned while streaming
+		assertNull(cache.get("p2", "snap-1"));
+		assertEquals(2L, cache.stats().get("tooLarge"));
+	}
+}
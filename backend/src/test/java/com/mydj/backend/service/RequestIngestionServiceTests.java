@@ -0,0 +1,113 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.model.RequestRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RequestIngestionServiceTests {
+
+	private static Track track(String id) {
+		return new Track.Builder()
+			.setName("Song " + id)
+			.setUri("spotify:track:" + id)
+			.setExplicit(false)
+			.setArtists(new ArtistSimplified.Builder().setName("Artist").build())
+			.build();
+	}
+
+	private static RequestIngestionService ingestion(SpotifyService spotify, RequestQueueService queues,
+	                                                 int workers, int capacity) {
+		RequestClassificationService classifier = mock(RequestClassificationService.class);
+		when(classifier.classify(anyString(), anyString(), anyString(), anyList(), anyBoolean(), anyString()))
+			.thenAnswer(a -> new RequestRecord(a.getArgument(1), a.getArgument(2), "pop", false, a.getArgument(5), true));
+		RequestIngestionService ingestion = new RequestIngestionService(spotify, classifier, queues, new SpotifyCallScheduler(10, 20));
+		ReflectionTestUtils.setField(ingestion, "workers", workers);
+		ReflectionTestUtils.setField(ingestion, "queueCapacity", capacity);
+		ReflectionTestUtils.setField(ingestion, "statusTtlMinutes", 1L);
+		ingestion.start();
+		return ingestion;
+	}
+
+	private static void awaitDone(RequestIngestionService.Ticket t) throws InterruptedException {
+		for (int i = 0; i < 200 && !t.done(); i++) Thread.sleep(10);
+	}
+
+	@Test
+	void enrichesAndQueuesInTheBackground() throws Exception {
+		SpotifyService spotify = mock(SpotifyService.class);
+		when(spotify.getTrack("spotify:track:1")).thenReturn(track("1"));
+		when(spotify.getArtistGenres(any(Track.class))).thenReturn(List.of("pop"));
+		RequestQueueService queues = new RequestQueueService(RequestJournal.disabled());
+		RequestIngestionService ingestion = ingestion(spotify, queues, 2, 10);
+
+		var ticket = ingestion.submit("dj", "spotify:track:1");
+		awaitDone(ticket);
+
+		assertEquals(RequestIngestionService.Status.ADDED, ingestion.status(ticket.id()).status());
+		assertTrue(queues.containsUri("dj", "spotify:track:1"));
+
+		var again = ingestion.submit("dj", "spotify:track:1");
+		assertEquals(RequestIngestionService.Status.DUPLICATE, again.status());
+		verify(spotify, times(1)).getTrack("spotify:track:1");
+		ingestion.shutdown();
+	}
+
+	@Test
+	void refusesWithRetryAfterWhenTheQueueIsFull() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		SpotifyService spotify = mock(SpotifyService.class);
+		when(spotify.getTrack(anyString())).thenAnswer(a -> {
+			started.countDown();
+			release.await();
+			return track("x");
+		});
+		RequestQueueService queues = new RequestQueueService(RequestJournal.disabled());
+		RequestIngestionService ingestion = ingestion(spotify, queues, 1, 1);
+
+		ingestion.submit("dj", "spotify:track:1");
+		assertTrue(started.await(2, TimeUnit.SECONDS));
+		ingestion.submit("dj", "spotify:track:2");
+
+		var busy = assertThrows(RequestIngestionService.BusyException.class,
+			() -> ingestion.submit("dj", "spotify:track:3"));
+		assertTrue(busy.retryAfterSeconds() >= 1);
+		assertEquals(1L, ingestion.stats().get("rejected"));
+
+		release.countDown();
+		ingestion.shutdown();
+	}
+
+	@Test
+	void repeatSubmissionsShareTheTicketInFlight() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		SpotifyService spotify = mock(SpotifyService.class);
+		when(spotify.getTrack(anyString())).thenAnswer(a -> {
+			release.await();
+			return track("1");
+		});
+		when(spotify.getArtistGenres(any(Track.class))).thenReturn(List.of("pop"));
+		RequestQueueService queues = new RequestQueueService(RequestJournal.disabled());
+		RequestIngestionService ingestion = ingestion(spotify, queues, 4, 10);
+
+		var first = ingestion.submit("dj", "spotify:track:1");
+		for (int i = 0; i < 10; i++) assertSame(first, ingestion.submit("dj", "spotify:track:1"));
+		release.countDown();
+		awaitDone(first);
+
+		assertEquals(RequestIngestionService.Status.ADDED, first.status());
+		assertEquals(1, queues.getValid("dj").size());
+		verify(spotify, times(1)).getTrack("spotify:track:1");
+		ingestion.shutdown();
+	}
+}
@@ -0,0 +1,121 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.model.RequestRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestJournalTests {
+
+	@TempDir
+	Path dir;
+
+	private RequestJournal open(int capacityBytes) {
+		RequestJournal journal = new RequestJournal(true, dir, capacityBytes, 0);
+		journal.open();
+		return journal;
+	}
+
+	private static RequestRecord rec(String id, boolean valid) {
+		return new RequestRecord("t" + id, "a" + id, "pop", false, "spotify:track:" + id, valid, List.of("pop", "dance pop"));
+	}
+
+	private static List<String> uris(List<RequestRecord> records) {
+		return records.stream().map(RequestRecord::getUri).toList();
+	}
+
+	@Test
+	void replaysQueuesAndSettingsAfterRestart() {
+		RequestJournal journal = open(1 << 20);
+		journal.recordAdded("dj", rec("1", true));
+		journal.recordAdded("dj", rec("2", true));
+		journal.recordAdded("dj", rec("3", true));
+		journal.recordUpdated("dj", rec("2", false));
+		journal.recordRemoved("dj", "spotify:track:1");
+		journal.recordAdded("other", rec("9", true));
+		journal.ownerCleared("other");
+		journal.settingsChanged("dj", true, List.of("house"));
+		journal.close();
+
+		RequestJournal reopened = open(1 << 20);
+		List<RequestRecord> queue = reopened.recoveredQueues().get("dj");
+		assertEquals(List.of("spotify:track:2", "spotify:track:3"), uris(queue));
+		assertEquals(rec("2", false), queue.get(0));
+		assertFalse(reopened.recoveredQueues().containsKey("other"));
+		assertEquals(new RequestJournal.OwnerSettings(true, List.of("house")), reopened.recoveredSettings().get("dj"));
+		reopened.close();
+	}
+
+	@Test
+	void compactsIntoSnapshotWhenFull() throws Exception {
+		RequestJournal journal = open(8192);
+		for (int i = 0; i < 500; i++) journal.recordAdded("dj", rec(Integer.toString(i), true));
+		for (int i = 0; i < 490; i++) journal.recordRemoved("dj", "spotify:track:" + i);
+		// Compaction runs on the journal thread once the journal is three quarters full.
+		long deadline = System.currentTimeMillis() + 5_000;
+		while ((long) journal.stats().get("epoch") == 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+		assertTrue((long) journal.stats().get("epoch") > 0);
+		journal.close();
+
+		RequestJournal reopened = open(8192);
+		List<RequestRecord> queue = reopened.recoveredQueues().get("dj");
+		assertEquals(10, queue.size());
+		assertEquals("spotify:track:490", queue.get(0).getUri());
+		reopened.close();
+	}
+
+	@Test
+	void replayStopsAtAnEntryThatDoesNotDecode() throws Exception {
+		RequestJournal journal = open(1 << 16);
+		journal.recordAdded("dj", rec("1", true));
+		journal.close();
+
+		// A checksummed entry whose title claims more bytes than the entry holds.
+		ByteBuffer payload = ByteBuffer.allocate(11).put((byte) 1).putInt(2).put("dj".getBytes(StandardCharsets.UTF_8)).putInt(1 << 20);
+		CRC32 crc = new CRC32();
+		crc.update(payload.array());
+		try (FileChannel ch = FileChannel.open(dir.resolve("requests.journal"), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer head = ByteBuffer.allocate(4);
+			ch.read(head, 12);
+			long end = 12 + 8 + head.flip().getInt();
+			ch.write(ByteBuffer.allocate(8 + 11).putInt(11).putInt((int) crc.getValue()).put(payload.array()).flip(), end);
+		}
+
+		RequestJournal reopened = open(1 << 16);
+		assertEquals(true, reopened.stats().get("enabled"));
+		assertEquals(List.of("spotify:track:1"), uris(reopened.recoveredQueues().get("dj")));
+		assertTrue(reopened.recordAdded("dj", rec("2", true)));
+		reopened.close();
+
+		RequestJournal again = open(1 << 16);
+		assertEquals(List.of("spotify:track:1", "spotify:track:2"), uris(again.recoveredQueues().get("dj")));
+		again.close();
+	}
+
+	@Test
+	void requestQueueServiceRestoresFromJournal() {
+		RequestJournal journal = open(1 << 20);
+		RequestQueueService queues = new RequestQueueService(journal);
+		queues.add("dj", rec("1", true));
+		queues.add("dj", rec("2", false));
+		queues.updateAll("dj", r -> new RequestRecord(r.getTitle(), r.getArtist(), r.getGenre(),
+			r.isExplicit(), r.getUri(), true, r.getArtistGenres()));
+		journal.close();
+
+		RequestJournal reopened = open(1 << 20);
+		RequestQueueService restored = new RequestQueueService(reopened);
+		restored.restore();
+		assertEquals(List.of("spotify:track:1", "spotify:track:2"), uris(restored.getValid("dj")));
+		assertTrue(restored.getInvalid("dj").isEmpty());
+		reopened.close();
+	}
+}
@@ -0,0 +1,123 @@
+package com.mydj.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydj.backend.model.RequestRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestQueueServiceTests {
+
+	private static RequestRecord rec(String id, boolean valid) {
+		return new RequestRecord("t" + id, "a" + id, "pop", false, "spotify:track:" + id, valid);
+	}
+
+	private static List<String> uris(List<RequestRecord> records) {
+		return records.stream().map(RequestRecord::getUri).toList();
+	}
+
+	@Test
+	void rejectsDuplicateUris() {
+		RequestQueueService queues = new RequestQueueService(RequestJournal.disabled());
+		assertTrue(queues.add("dj", rec("1", true)));
+		assertFalse(queues.add("dj", rec("1", false)));
+
+		assertTrue(queues.containsUri("dj", "spotify:track:1"));
+		assertEquals(1, queues.getValid("dj").size());
+		assertTrue(queues.getInvalid("dj").isEmpty());
+	}
+
+	@Test
+	void reclassificationMovesRecordsAndKeepsArrivalOrder() {
+		RequestQueueService queues = new RequestQueueService(RequestJournal.disabled());
+		queues.add("dj", rec("1", true));
+		queues.add("dj", rec("2", false));
+		queues.add("dj", rec("3", true));
+
+		queues.updateAll("dj", r -> r.getUri().endsWith("3") ? r
+			: new RequestRecord(r.getTitle(), r.getArtist(), r.getGenre(), r.isExplicit(), r.getUri(), !r.isValid()));
+
+		assertEquals(List.of("spotify:track:2", "spotify:track:3"), uris(queues.getValid("dj")));
+		assertEquals(List.of("spotify:track:1"), uris(queues.getInvalid("dj")));
+	}
+
+	@Test
+	void removeDropsOnlyThatUri() {
+		RequestQueueService queues = new RequestQueueService(RequestJournal.disabled());
+		queues.add("dj", rec("1", true));
+		queues.add("dj", rec("2", true));
+		List<RequestRecord> before = queues.getValid("dj");
+
+		queues.removeByUri("dj", "spotify:track:1");
+
+		assertEquals(List.of("spotify:track:2"), uris(queues.getValid("dj")));
+		assertEquals(2, before.size(), "earlier snapshots are immutable");
+		assertFalse(queues.containsUri("dj", "spotify:track:1"));
+	}
+
+	@Test
+	void changesSinceReturnsOnlyWhatMoved() {
+		RequestQueueService queues = new RequestQueueService(RequestJournal.disabled());
+		queues.add("dj", rec("1", true));
+		queues.add("dj", rec("2", true));
+		long seen = queues.snapshot("dj").version();
+
+		queues.add("dj", rec("3", false));
+		queues.removeByUri("dj", "spotify:track:1");
+		queues.updateAll("dj", r -> r.getUri().endsWith("2")
+			? new RequestRecord(r.getTitle(), r.getArtist(), r.getGenre(), r.isExplicit(), r.getUri(), false) : r);
+
+		RequestQueueService.Delta delta = queues.changesSince("dj", seen);
+		assertEquals(queues.snapshot("dj").version(), delta.version());
+		assertEquals(List.of("spotify:track:2", "spotify:track:3"), uris(delta.upserts()));
+		assertEquals(List.of("spotify:track:1"), delta.removed());
+		assertTrue(queues.changesSince("dj", delta.version()).upserts().isEmpty());
+	}
+
+	@Test
+	void clearingForcesAFullReread() {
+		RequestQueueService queues = new RequestQueueService(RequestJournal.disabled());
+		queues.add("dj", rec("1", true));
+		long seen = queues.snapshot("dj").version();
+
+		queues.clearAll("dj");
+
+		assertNull(queues.changesSince("dj", seen));
+		assertTrue(queues.snapshot("dj").version() > seen);
+	}
+
+	@Test
+	void waitersCompleteOnTheNextChange() {
+		RequestQueueService queues = new RequestQueueService(RequestJournal.disabled());
+		queues.add("dj", rec("1", true));
+		var change = queues.awaitChange("dj", queues.snapshot("dj").version());
+		assertFalse(change.isDone());
+
+		queues.add("dj", rec("2", true));
+
+		assertTrue(change.isDone());
+	}
+
+	@Test
+	void snapshotJsonIsEncodedOncePerVersion() throws Exception {
+		RequestQueueService queues = new RequestQueueService(RequestJournal.disabled());
+		queues.add("dj", rec("1", true));
+		queues.add("dj", rec("2", false));
+
+		byte[] first = queues.snapshot("dj").json();
+		assertSame(first, queues.snapshot("dj").json());
+
+		JsonNode body = new ObjectMapper().readTree(first);
+		assertEquals(queues.snapshot("dj").version(), body.get("version").asLong());
+		assertTrue(body.get("full").asBoolean());
+		assertEquals(1, body.get("valid").size());
+		assertEquals(rec("1", true).toMap().get("uri"), body.get("valid").get(0).get("uri").asText());
+		assertEquals("false", body.get("invalid").get(0).get("explicit").asText());
+
+		queues.removeByUri("dj", rec("2", false).getUri());
+		assertNotSame(first, queues.snapshot("dj").json());
+	}
+}
@@ -0,0 +1,43 @@
+package com.mydj.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchResultCacheTests {
+
+	private static Map<String, String> row(String name, String artist) {
+		return Map.of("name", name, "artist", artist, "uri", "spotify:track:" + name.hashCode());
+	}
+
+	private static List<String> names(List<Map<String, String>> rows) {
+		return rows.stream().map(r -> r.get("name")).toList();
+	}
+
+	@Test
+	void longerQueriesAreFilteredFromACompletePrefix() {
+		SearchResultCache cache = new SearchResultCache(100, 60);
+		cache.put("Here  Comes", 25, List.of(
+			row("Here Comes the Sun", "The Beatles"),
+			row("Here Comes the Rain Again", "Eurythmics"),
+			row("Here Comes Your Man", "Pixies")), true);
+
+		assertEquals(List.of("Here Comes the Sun"), names(cache.lookup("here comes the s", 25)));
+		assertEquals(List.of("Here Comes Your Man"), names(cache.lookup("here comes pix", 25)));
+		assertEquals(3, cache.lookup("HERE COMES", 25).size());
+	}
+
+	@Test
+	void aTruncatedPrefixOnlyAnswersWhenEnoughStillMatches() {
+		SearchResultCache cache = new SearchResultCache(100, 60);
+		cache.put("love", 2, List.of(row("Love Story", "Taylor Swift"), row("Lovely", "Billie Eilish")), false);
+
+		assertNull(cache.lookup("love s", 2), "only one cached row matches, Spotify may have more");
+		assertEquals(List.of("Love Story"), names(cache.lookup("love", 1)));
+		assertNull(cache.lookup("love", 10), "cached with a smaller limit");
+		assertEquals(1L, cache.stats().get("exactHits"));
+	}
+}
@@ -0,0 +1,43 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.service.SpotifyCallScheduler.Lane;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpotifyCallSchedulerTests {
+
+	@Test
+	void lowerLanesLeaveTheReserveForTheDj() throws Exception {
+		// Slow refill: the burst is all there is for the length of the test.
+		SpotifyCallScheduler scheduler = new SpotifyCallScheduler(0.1, 4);
+
+		scheduler.run(Lane.BACKGROUND, () -> { scheduler.acquire(); scheduler.acquire(); return null; });
+		assertThrows(SpotifyCallScheduler.ShedException.class,
+			() -> scheduler.run(Lane.BACKGROUND, () -> { scheduler.acquire(); return null; }));
+
+		scheduler.acquire();
+		scheduler.acquire();
+		Map<?, ?> lanes = (Map<?, ?>) scheduler.stats().get("lanes");
+		assertEquals(1L, ((Map<?, ?>) lanes.get("background")).get("shed"));
+		assertEquals(2L, ((Map<?, ?>) lanes.get("dj")).get("admitted"));
+	}
+
+	@Test
+	void retryAfterShedsLanesThatCannotWaitThatLong() throws Exception {
+		SpotifyCallScheduler scheduler = new SpotifyCallScheduler(10, 20);
+		scheduler.pauseFor(6_000);
+
+		long started = System.currentTimeMillis();
+		assertThrows(SpotifyCallScheduler.ShedException.class,
+			() -> scheduler.run(Lane.SEARCH, () -> { scheduler.acquire(); return null; }));
+		assertThrows(SpotifyCallScheduler.ShedException.class,
+			() -> scheduler.run(Lane.BACKGROUND, () -> { scheduler.acquire(); return null; }));
+		assertTrue(System.currentTimeMillis() - started < 1_000, "shed without waiting");
+
+		assertTrue(scheduler.canWait(6_000), "the DJ lane still waits out the pause");
+		assertFalse(scheduler.run(Lane.SEARCH, () -> scheduler.canWait(6_000)));
+	}
+}
@@ -0,0 +1,82 @@
+package com.mydj.backend.service;
+
+import com.mydj.backend.service.SpotifyCallScheduler.Lane;
+import com.mydj.backend.service.SpotifyConcurrencyLimiter.Outcome;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpotifyConcurrencyLimiterTests {
+
+	private static final long MS = 1_000_000L;
+
+	// Fills the limit and completes every call with the same latency.
+	private static void round(SpotifyConcurrencyLimiter limiter, long rttMs, Outcome outcome) {
+		int n = limiter.limit();
+		for (int i = 0; i < n; i++) assertTrue(limiter.acquire(Lane.DJ, 0));
+		for (int i = 0; i < n; i++) limiter.release(rttMs * MS, outcome);
+	}
+
+	@Test
+	void growsWhileLatencyHoldsAndHalvesOnRateLimit() {
+		SpotifyConcurrencyLimiter limiter = new SpotifyConcurrencyLimiter(4, 1, 20);
+		for (int i = 0; i < 10; i++) round(limiter, 100, Outcome.OK);
+		int grown = limiter.limit();
+		assertTrue(grown > 8, "limit grew to " + grown);
+
+		assertTrue(limiter.acquire(Lane.DJ, 0));
+		limiter.release(50 * MS, Outcome.RATE_LIMITED);
+		assertEquals(grown / 2, limiter.limit(), 1);
+	}
+
+	@Test
+	void cutsOnLatencySpikesAndQueuesCallersOverTheLimit() throws Exception {
+		SpotifyConcurrencyLimiter limiter = new SpotifyConcurrencyLimiter(4, 1, 20);
+		for (int i = 0; i < 3; i++) round(limiter, 100, Outcome.OK);
+		int before = limiter.limit();
+
+		for (int i = 0; i < 3; i++) {
+			round(limiter, 1_000, Outcome.OK);
+			Thread.sleep(120);
+		}
+		assertTrue(limiter.limit() < before);
+
+		int limit = limiter.limit();
+		for (int i = 0; i < limit; i++) assertTrue(limiter.acquire(Lane.DJ, 0));
+		assertFalse(limiter.acquire(Lane.DJ, 20));
+		assertEquals(1L, limiter.stats().get("rejected"));
+	}
+
+	@Test
+	void aFreedSlotGoesToTheHighestLaneWaiting() throws Exception {
+		SpotifyConcurrencyLimiter limiter = new SpotifyConcurrencyLimiter(1, 1, 20);
+		assertTrue(limiter.acquire(Lane.BACKGROUND, 0));
+
+		CountDownLatch backgroundWaiting = new CountDownLatch(1);
+		AtomicBoolean backgroundGot = new AtomicBoolean();
+		Thread background = new Thread(() -> {
+			backgroundWaiting.countDown();
+			backgroundGot.set(limiter.acquire(Lane.BACKGROUND, 2_000));
+		});
+		background.start();
+		backgroundWaiting.await();
+		Thread.sleep(50);
+
+		AtomicBoolean djGot = new AtomicBoolean();
+		Thread dj = new Thread(() -> djGot.set(limiter.acquire(Lane.DJ, 2_000)));
+		dj.start();
+		Thread.sleep(50);
+
+		limiter.release(10 * MS, Outcome.IGNORED);
+		dj.join(1_000);
+		assertTrue(djGot.get(), "the DJ call took the freed slot");
+		assertFalse(backgroundGot.get(), "background still waits behind it");
+
+		limiter.release(10 * MS, Outcome.IGNORED);
+		background.join(1_000);
+		assertTrue(backgroundGot.get());
+	}
+}
@@ -0,0 +1,70 @@
+package com.mydj.backend.service;
+
+import org.junit.jupiter.api.Test;
+import se.michaelthelin.spotify.model_objects.specification.Paging;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpotifyServiceTests {
+
+	private static final int TOTAL = 8;
+
+	private static Paging<Integer> page(int offset, int size) {
+		Integer[] items = IntStream.range(offset, Math.min(TOTAL, offset + size)).boxed().toArray(Integer[]::new);
+		return new Paging.Builder<Integer>().setItems(items).setOffset(offset).setTotal(TOTAL)
+			.setNext(offset + size < TOTAL ? "next" : null).build();
+	}
+
+	private static SpotifyService service() {
+		return new SpotifyService(null, null, null, new SpotifyCallScheduler(10, 20));
+	}
+
+	@Test
+	void fetchesTheRestTogetherAndDeliversThemInOrder() throws Exception {
+		Set<Integer> offsets = ConcurrentHashMap.newKeySet();
+		List<Integer> seen = new ArrayList<>();
+		// The caller's first page is longer than the page size; the rest start right after it.
+		service().<Integer>forEachPage(page(0, 3), 2, offset -> {
+			offsets.add(offset);
+			if (offset == 3) Thread.sleep(100); // arrives after the pages behind it
+			return page(offset, 2);
+		}, items -> seen.addAll(List.of(items)));
+
+		assertEquals(Set.of(3, 5, 7), offsets);
+		assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7), seen);
+	}
+
+	@Test
+	void stopsAtTheFirstFailedPageAndCancelsTheRest() throws Exception {
+		CountDownLatch interrupted = new CountDownLatch(1);
+		List<Integer> seen = new ArrayList<>();
+		IOException failure = assertThrows(IOException.class, () -> service().<Integer>forEachPage(null, 2, offset -> {
+			if (offset == 4) {
+				Thread.sleep(50);
+				throw new IOException("page 4 failed");
+			}
+			if (offset == 6) {
+				try {
+					Thread.sleep(10_000);
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+					throw e;
+				}
+			}
+			return page(offset, 2);
+		}, items -> seen.addAll(List.of(items))));
+
+		assertEquals("page 4 failed", failure.getMessage());
+		assertEquals(List.of(0, 1, 2, 3), seen, "pages before the failure only");
+		assertTrue(interrupted.await(2, TimeUnit.SECONDS), "the outstanding fetch was cancelled");
+	}
+}
@@ -0,0 +1,52 @@
+package com.mydj.backend.service;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.michaelthelin.spotify.IHttpManager;
+import se.michaelthelin.spotify.SpotifyApi;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpotifyTokenManagerTests {
+
+	@TempDir
+	Path dir;
+
+	/** Answers token requests, failing the first one. */
+	private static final class FlakyTokenEndpoint implements IHttpManager {
+		final AtomicInteger posts = new AtomicInteger();
+
+		@Override
+		public String post(URI uri, Header[] headers, HttpEntity body) throws IOException {
+			if (posts.incrementAndGet() == 1) throw new IOException("connection reset");
+			return "{\"access_token\":\"fresh\",\"token_type\":\"Bearer\",\"expires_in\":3600}";
+		}
+
+		@Override public String get(URI uri, Header[] headers) { throw new UnsupportedOperationException(); }
+		@Override public String put(URI uri, Header[] headers, HttpEntity body) { throw new UnsupportedOperationException(); }
+		@Override public String delete(URI uri, Header[] headers, HttpEntity body) { throw new UnsupportedOperationException(); }
+	}
+
+	@Test
+	void retriesAFailedBackgroundRefresh() throws Exception {
+		FlakyTokenEndpoint endpoint = new FlakyTokenEndpoint();
+		SpotifyApi api = new SpotifyApi.Builder().setClientId("id").setClientSecret("secret").setHttpManager(endpoint).build();
+		SpotifyTokenManager tokens = new SpotifyTokenManager(api, dir, 50);
+		tokens.start(); // no saved token: refreshes at once, in the background
+
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (endpoint.posts.get() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+		Thread.sleep(50);
+		assertEquals(2, endpoint.posts.get(), "the failed refresh was retried once, then held");
+		assertEquals("fresh", tokens.accessToken(), "no refresh on the caller's thread");
+		assertEquals(2, endpoint.posts.get());
+		tokens.shutdown();
+	}
+}
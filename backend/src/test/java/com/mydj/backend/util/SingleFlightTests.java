@@ -0,0 +1,57 @@
+package com.mydj.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTests {
+
+	@Test
+	void concurrentCallersShareOneLoad() throws Exception {
+		SingleFlight<String, String> flights = new SingleFlight<>();
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(pool.submit(() -> flights.run("spotify:track:1", () -> {
+					loads.incrementAndGet();
+					release.await();
+					return "song";
+				})));
+			}
+			while ((long) flights.stats().get("shared") < 7) Thread.sleep(5);
+			release.countDown();
+			for (Future<String> r : results) assertEquals("song", r.get(2, TimeUnit.SECONDS));
+		} finally {
+			pool.shutdownNow();
+		}
+		assertEquals(1, loads.get());
+		assertEquals(0, flights.inFlight());
+	}
+
+	@Test
+	void waitersSeeTheLeadersFailureAndTheNextCallRetries() throws Exception {
+		SingleFlight<String, String> flights = new SingleFlight<>();
+		SingleFlight.Claim<String> leader = flights.claim("k");
+		SingleFlight.Claim<String> waiter = flights.claim("k");
+		assertTrue(leader.leader());
+		assertFalse(waiter.leader());
+
+		flights.fail("k", leader, new IOException("boom"));
+
+		assertThrows(IOException.class, () -> SingleFlight.await(waiter.future()));
+		assertEquals("again", flights.run("k", () -> "again"));
+	}
+}
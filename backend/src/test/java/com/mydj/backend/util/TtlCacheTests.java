@@ -0,0 +1,34 @@
+package com.mydj.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TtlCacheTests {
+
+	@Test
+	void evictsLeastRecentlyUsedWhenFull() {
+		TtlCache<String, String> cache = new TtlCache<>(2, 60_000);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		assertEquals("1", cache.get("a"));
+		cache.put("c", "3");
+
+		assertNull(cache.get("b"));
+		assertEquals("1", cache.get("a"));
+		assertEquals("3", cache.get("c"));
+		assertEquals(1L, cache.stats().get("evictions"));
+	}
+
+	@Test
+	void expiresEntriesAfterTtl() throws Exception {
+		TtlCache<String, String> cache = new TtlCache<>(10, 20);
+		cache.put("a", "1");
+		Thread.sleep(40);
+
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.size());
+		assertEquals(1L, cache.stats().get("expirations"));
+		assertEquals(1L, cache.stats().get("misses"));
+	}
+}
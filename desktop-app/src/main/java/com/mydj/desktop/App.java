@@ -53,6 +53,7 @@ public class App extends Application {
     private volatile boolean loggedIn = false;
     private Scene scene; 
     private volatile boolean forceAccountSwitch = false;
+    private volatile boolean playbackStreaming = false;
 
     private static long jitterMs(int baseMs) {
         return baseMs + ThreadLocalRandom.current().nextInt(0, 400);
@@ -109,6 +110,7 @@ public class App extends Application {
             }
             apiClient.addToPlaylistByUri(
                 uri, playlistId, resp -> {
+                    requestsPane.addFinished(uri);
                     status.setText("Added: " + resp);
                     if (notifier != null) notifier.accept("Added to playlist");
                     playlistPane.refreshTracks();
@@ -116,6 +118,28 @@ public class App extends Application {
                 }
             );
         });
+        requestsPane.setOnAddAllToPlaylist(uris -> {
+            String playlistId = playlistPane.getSelectedPlaylistId();
+            if (playlistId == null) {
+                uris.forEach(requestsPane::addFinished);
+                status.setText("No playlist selected to add to.");
+                return;
+            }
+            apiClient.addToPlaylistByUris(uris, playlistId, result -> {
+                uris.forEach(requestsPane::addFinished);
+                List<String> added = result.getOrDefault("added", List.of());
+                added.forEach(requestsPane::removeUri);
+                result.getOrDefault("duplicates", List.of()).forEach(requestsPane::removeUri);
+                if (!added.isEmpty()) {
+                    status.setText("Added " + added.size() + " track(s)");
+                    if (notifier != null) notifier.accept("Added to playlist");
+                    playlistPane.refreshTracks();
+                }
+            }, err -> {
+                uris.forEach(requestsPane::addFinished);
+                status.setText("Add failed: " + err.getMessage());
+            });
+        });
 
         // When playlist selection changes, refresh the tracks
         playlistPane.setOnPlaylistChanged(p -> playlistPane.refreshTracks());
@@ -261,13 +285,22 @@ public class App extends Application {
             deviceSelector.refreshDevices();
         });
 
+        // Playback is pushed by the backend; polling is only the fallback while the stream is down
+        Runnable showNowPlaying = () -> {
+            String cur = playbackBar.getCurrentTrackUri();
+            playlistPane.setCurrentlyPlayingUri(cur);
+            requestsPane.setCurrentlyPlayingUri(cur);
+        };
+        connectPlaybackStream(playbackBar, showNowPlaying);
+
         // Polling
-        poller.scheduleAtFixedRate(() -> Platform.runLater(() -> {
-            playbackBar.refreshPlayback();
-            String cur = playbackBar.getCurrentTrackUri();   
-            playlistPane.setCurrentlyPlayingUri(cur);        
-            requestsPane.setCurrentlyPlayingUri(cur);        
-        }), 0, 1, TimeUnit.SECONDS);
+        poller.scheduleAtFixedRate(() -> {
+            if (playbackStreaming) return;
+            Platform.runLater(() -> {
+                playbackBar.refreshPlayback();
+                showNowPlaying.run();
+            });
+        }, 0, 1, TimeUnit.SECONDS);
         poller.scheduleAtFixedRate(() -> Platform.runLater(playlistPane::refreshTracks), jitterMs(1500), 15_000, TimeUnit.MILLISECONDS);
         poller.scheduleAtFixedRate(() -> Platform.runLater(requestsPane::loadRequests), jitterMs(3000), 10_000, TimeUnit.MILLISECONDS);
         poller.scheduleAtFixedRate(() -> Platform.runLater(deviceSelector::refreshDevices), jitterMs(4500), 30_000, TimeUnit.MILLISECONDS);
@@ -310,6 +343,22 @@ public class App extends Application {
         deviceSelector.loadDevices();
     }
 
+    private void connectPlaybackStream(PlaybackBar playbackBar, Runnable showNowPlaying) {
+        apiClient.streamPlayback(
+            state -> {
+                playbackStreaming = true;
+                playbackBar.applyState(state);
+                showNowPlaying.run();
+            },
+            err -> {
+                playbackStreaming = false;
+                if (poller.isShutdown()) return;
+                poller.schedule(() -> connectPlaybackStream(playbackBar, showNowPlaying),
+                    jitterMs(3000), TimeUnit.MILLISECONDS);
+            }
+        );
+    }
+
     @Override
     public void stop() {
         try { poller.shutdownNow(); } catch (Exception ignored) {}
@@ -10,6 +10,7 @@ public class PlaybackState {
     private String deviceId;
     private String albumImageUrl;
     private String trackUri;
+    private long timestampMs;
 
     public PlaybackState() {}
 
@@ -40,4 +41,7 @@ public class PlaybackState {
 
     public String getTrackUri() { return trackUri; }
     public void setTrackUri(String trackUri) { this.trackUri = trackUri; }
+
+    public long getTimestampMs() { return timestampMs; }
+    public void setTimestampMs(long timestampMs) { this.timestampMs = timestampMs; }
 }
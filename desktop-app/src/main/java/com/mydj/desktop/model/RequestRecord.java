@@ -6,13 +6,19 @@ public class RequestRecord {
     private final String genre;
     private final boolean explicit;
     private final String uri;
+    private final boolean valid;
 
     public RequestRecord(String title, String artist, String genre, boolean explicit, String uri) {
+        this(title, artist, genre, explicit, uri, true);
+    }
+
+    public RequestRecord(String title, String artist, String genre, boolean explicit, String uri, boolean valid) {
         this.title = title;
         this.artist = artist;
         this.genre = genre;
         this.explicit = explicit;
         this.uri = uri;
+        this.valid = valid;
     }
 
     public String getTitle() { return title; }
@@ -20,6 +26,7 @@ public class RequestRecord {
     public String getGenre() { return genre; }
     public boolean isExplicit() { return explicit; }
     public String getUri() { return uri; }
+    public boolean isValid() { return valid; }
 
     public String display() {
         return title + " by " + artist;
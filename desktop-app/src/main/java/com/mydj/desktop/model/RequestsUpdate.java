@@ -0,0 +1,26 @@
+package com.mydj.desktop.model;
+
+import java.util.List;
+
+/**
+ * One answer from /requests: either the full queues, or the records added or
+ * reclassified and the URIs removed since the version the client sent.
+ */
+public class RequestsUpdate {
+    private final long version;
+    private final boolean full;
+    private final List<RequestRecord> records;
+    private final List<String> removed;
+
+    public RequestsUpdate(long version, boolean full, List<RequestRecord> records, List<String> removed) {
+        this.version = version;
+        this.full = full;
+        this.records = records;
+        this.removed = removed;
+    }
+
+    public long getVersion() { return version; }
+    public boolean isFull() { return full; }
+    public List<RequestRecord> getRecords() { return records; }
+    public List<String> getRemoved() { return removed; }
+}
@@ -6,6 +6,7 @@ import com.mydj.desktop.model.DeviceInfo;
 import com.mydj.desktop.model.PlaylistInfo;
 import com.mydj.desktop.model.PlaylistTrack;
 import com.mydj.desktop.model.RequestRecord;
+import com.mydj.desktop.model.RequestsUpdate;
 import javafx.application.Platform;
 import java.net.CookieManager;
 import java.net.CookiePolicy;
@@ -87,8 +88,8 @@ public class ApiClient {
             });
     }
     
-    private void withRetries(Supplier<CompletableFuture<String>> attempt,
-                             Consumer<String> onSuccess,
+    private <T> void withRetries(Supplier<CompletableFuture<T>> attempt,
+                             Consumer<T> onSuccess,
                              Consumer<Throwable> onError,
                              int maxAttempts) {
         attempt.get().whenComplete((body, err) -> {
@@ -131,20 +132,35 @@ public class ApiClient {
         );
     }
 
+    private record CachedTracks(String etag, List<PlaylistTrack> tracks) {}
+    private final Map<String, CachedTracks> playlistTracks = new java.util.concurrent.ConcurrentHashMap<>();
+
     public void getPlaylistTracks(String playlistId, Consumer<List<PlaylistTrack>> onSuccess, Consumer<Throwable> onError) {
+        // Long playlists arrive as a stream; read it as it comes in, off the FX thread.
+        // An unchanged playlist comes back as 304 and the last list is reused.
         withRetries(
-            () -> client.sendAsync(build("GET", "/playlists/" + playlistId + "/tracks", null), HttpResponse.BodyHandlers.ofString())
-                        .thenApply(resp -> { log("GET /playlists/"+playlistId+"/tracks status="+resp.statusCode()); return resp.body(); }),
-            body -> {
-                try {
-                    List<Map<String,String>> list = mapper.readValue(body, new TypeReference<>() {});
-                    List<PlaylistTrack> out = new ArrayList<>();
-                    for (var m : list) out.add(new PlaylistTrack(m.get("name"), m.get("artist"), m.get("uri")));
-                    Platform.runLater(() -> onSuccess.accept(out));
-                } catch (Exception e) {
-                    Platform.runLater(() -> onError.accept(e));
-                }
+            () -> {
+                CachedTracks cached = playlistTracks.get(playlistId);
+                HttpRequest.Builder req = HttpRequest.newBuilder(build("GET", "/playlists/" + playlistId + "/tracks", null), (k, v) -> true);
+                if (cached != null) req.header("If-None-Match", cached.etag());
+                return client.sendAsync(req.build(), HttpResponse.BodyHandlers.ofInputStream())
+                        .thenApply(resp -> {
+                            log("GET /playlists/"+playlistId+"/tracks status="+resp.statusCode());
+                            try (var in = resp.body()) {
+                                if (resp.statusCode() == 304 && cached != null) return cached.tracks();
+                                List<Map<String,String>> list = mapper.readValue(in, new TypeReference<>() {});
+                                List<PlaylistTrack> out = new ArrayList<>(list.size());
+                                for (var m : list) out.add(new PlaylistTrack(m.get("name"), m.get("artist"), m.get("uri")));
+                                resp.headers().firstValue("ETag").ifPresentOrElse(
+                                    etag -> playlistTracks.put(playlistId, new CachedTracks(etag, out)),
+                                    () -> playlistTracks.remove(playlistId));
+                                return out;
+                            } catch (java.io.IOException e) {
+                                throw new java.io.UncheckedIOException(e);
+                            }
+                        });
             },
+            onSuccess,
             onError,
             2
         );
@@ -169,17 +185,43 @@ public class ApiClient {
         );
     }
 
-    public void getRequests(Consumer<Map<String, List<RequestRecord>>> onSuccess, Consumer<Throwable> onError) {
+    /**
+     * Fetches the request queues relative to the version the caller already
+     * holds (null for everything). onSuccess gets null when nothing changed.
+     */
+    public void getRequests(Long sinceVersion, Consumer<RequestsUpdate> onSuccess, Consumer<Throwable> onError) {
+        String path = sinceVersion == null ? "/requests" : "/requests?since=" + sinceVersion;
+        HttpRequest.Builder req = HttpRequest.newBuilder(build("GET", path, null), (name, value) -> true);
+        if (sinceVersion != null) req.header("If-None-Match", "\"" + sinceVersion + "\"");
         withRetries(
-            () -> client.sendAsync(build("GET", "/requests", null), HttpResponse.BodyHandlers.ofString())
-                        .thenApply(resp -> { log("GET /requests status="+resp.statusCode()); return resp.body(); }),
+            () -> client.sendAsync(req.build(), HttpResponse.BodyHandlers.ofString())
+                        .thenApply(resp -> {
+                            log("GET " + path + " status=" + resp.statusCode());
+                            if (resp.statusCode() == 304) return "";
+                            // An error body isn't a queue; keep showing what we have.
+                            if (resp.statusCode() != 200) throw new RuntimeException("Requests failed: " + resp.statusCode());
+                            return resp.body();
+                        }),
             body -> {
+                if (body == null || body.isBlank()) {
+                    Platform.runLater(() -> onSuccess.accept(null));
+                    return;
+                }
                 try {
-                    Map<String,List<Map<String,String>>> raw = mapper.readValue(body, new TypeReference<>() {});
-                    Map<String,List<RequestRecord>> out = new HashMap<>();
-                    out.put("valid", convert(raw.getOrDefault("valid", List.of())));
-                    out.put("invalid", convert(raw.getOrDefault("invalid", List.of())));
-                    Platform.runLater(() -> onSuccess.accept(out));
+                    var root = mapper.readTree(body);
+                    long version = root.path("version").asLong();
+                    RequestsUpdate update;
+                    if (root.path("full").asBoolean(true)) {
+                        List<RequestRecord> records = new ArrayList<>();
+                        records.addAll(convert(mapper.convertValue(root.path("valid"), new TypeReference<List<Map<String,String>>>() {}), true));
+                        records.addAll(convert(mapper.convertValue(root.path("invalid"), new TypeReference<List<Map<String,String>>>() {}), false));
+                        update = new RequestsUpdate(version, true, records, List.of());
+                    } else {
+                        List<Map<String,String>> upserts = mapper.convertValue(root.path("upserts"), new TypeReference<>() {});
+                        List<String> removed = mapper.convertValue(root.path("removed"), new TypeReference<>() {});
+                        update = new RequestsUpdate(version, false, convert(upserts, null), removed == null ? List.of() : removed);
+                    }
+                    Platform.runLater(() -> onSuccess.accept(update));
                 } catch (Exception e) {
                     Platform.runLater(() -> onError.accept(e));
                 }
@@ -189,12 +231,14 @@ public class ApiClient {
         );
     }
 
-    private List<RequestRecord> convert(List<Map<String,String>> raw) {
+    private List<RequestRecord> convert(List<Map<String,String>> raw, Boolean valid) {
         List<RequestRecord> list = new ArrayList<>();
+        if (raw == null) return list;
         for (var m : raw) {
+            boolean isValid = valid != null ? valid : Boolean.parseBoolean(m.getOrDefault("valid", "false"));
             list.add(new RequestRecord(
                 m.get("title"), m.get("artist"), m.getOrDefault("genre","unknown"),
-                Boolean.parseBoolean(m.getOrDefault("explicit","false")), m.getOrDefault("uri","")));
+                Boolean.parseBoolean(m.getOrDefault("explicit","false")), m.getOrDefault("uri",""), isValid));
         }
         return list;
     }
@@ -216,12 +260,34 @@ public class ApiClient {
             String payload = mapper.writeValueAsString(Map.of("trackUri", uri, "playlistId", playlistId));
             client.sendAsync(build("POST", "/addToPlaylistByUri", payload), HttpResponse.BodyHandlers.ofString())
                 .thenApply(resp -> { log("POST /addToPlaylistByUri status="+resp.statusCode()); return resp; })
-                .thenAccept(r -> Platform.runLater(() -> onSuccess.accept(r.body())));
+                .thenAccept(r -> Platform.runLater(() -> onSuccess.accept(r.body())))
+                .exceptionally(err -> { Platform.runLater(() -> onSuccess.accept("Error: " + err.getMessage())); return null; });
         } catch (Exception e) {
             Platform.runLater(() -> onSuccess.accept("Error: " + e.getMessage()));
         }
     }
 
+    /** One call for many tracks; the result lists them under "added", "duplicates" and "failed". */
+    public void addToPlaylistByUris(List<String> uris, String playlistId,
+                                    Consumer<Map<String, List<String>>> onSuccess, Consumer<Throwable> onError) {
+        try {
+            String payload = mapper.writeValueAsString(Map.of("trackUris", uris, "playlistId", playlistId));
+            client.sendAsync(build("POST", "/addToPlaylistByUris", payload), HttpResponse.BodyHandlers.ofString())
+                .thenApply(resp -> { log("POST /addToPlaylistByUris status="+resp.statusCode()+" n="+uris.size()); return resp; })
+                .thenAccept(r -> {
+                    try {
+                        Map<String, List<String>> result = mapper.readValue(r.body(), new TypeReference<>() {});
+                        Platform.runLater(() -> onSuccess.accept(result));
+                    } catch (Exception e) {
+                        Platform.runLater(() -> onError.accept(e));
+                    }
+                })
+                .exceptionally(err -> { Platform.runLater(() -> onError.accept(err)); return null; });
+        } catch (Exception e) {
+            Platform.runLater(() -> onError.accept(e));
+        }
+    }
+
     public void addToPlaylist(String title, String playlistId, Consumer<String> onSuccess) {
         try {
             String payload = mapper.writeValueAsString(Map.of("track", title, "playlistId", playlistId));
@@ -233,6 +299,49 @@ public class ApiClient {
         }
     }
 
+    public void getAutoDj(Consumer<Boolean> onSuccess, Consumer<Throwable> onError) {
+        withRetries(
+            () -> client.sendAsync(build("GET", "/autodj", null), HttpResponse.BodyHandlers.ofString())
+                        .thenApply(resp -> { log("GET /autodj status="+resp.statusCode()); return resp.body(); }),
+            body -> {
+                try {
+                    boolean enabled = mapper.readTree(body).path("enabled").asBoolean(false);
+                    onSuccess.accept(enabled);
+                } catch (Exception e) {
+                    onError.accept(e);
+                }
+            },
+            onError,
+            2
+        );
+    }
+
+    /** Turns the backend's auto-DJ on for the playlist, or off; reports whether it is now on. */
+    public void setAutoDj(boolean enabled, String playlistId, Consumer<Boolean> onSuccess, Consumer<Throwable> onError) {
+        try {
+            Map<String, Object> body = new HashMap<>();
+            body.put("enabled", enabled);
+            if (playlistId != null) body.put("playlistId", playlistId);
+            // Playlist only: guest requests go through the DJ's own accept step.
+            body.put("includeRequests", false);
+            String payload = mapper.writeValueAsString(body);
+            client.sendAsync(build("POST", "/autodj", payload), HttpResponse.BodyHandlers.ofString())
+                .thenApply(resp -> { log("POST /autodj status="+resp.statusCode()); return resp; })
+                .thenAccept(r -> {
+                    try {
+                        if (r.statusCode() != 200) throw new RuntimeException("Auto-DJ failed: " + r.body());
+                        boolean now = mapper.readTree(r.body()).path("enabled").asBoolean(false);
+                        Platform.runLater(() -> onSuccess.accept(now));
+                    } catch (Exception e) {
+                        Platform.runLater(() -> onError.accept(e));
+                    }
+                })
+                .exceptionally(err -> { Platform.runLater(() -> onError.accept(err)); return null; });
+        } catch (Exception e) {
+            Platform.runLater(() -> onError.accept(e));
+        }
+    }
+
     public void getGenreSeeds(Consumer<List<String>> onSuccess, Consumer<Throwable> onError) {
         withRetries(
             () -> client.sendAsync(build("GET", "/genres", null), HttpResponse.BodyHandlers.ofString())
@@ -288,6 +397,53 @@ public class ApiClient {
         );
     }
 
+    /**
+     * Opens the server-sent playback stream on a background thread. Each state
+     * pushed by the backend is handed to onState; onClosed runs once the stream
+     * ends or fails, and the caller decides whether to reconnect. Both run on
+     * the FX thread.
+     */
+    public void streamPlayback(Consumer<PlaybackState> onState, Consumer<Throwable> onClosed) {
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/playback/stream"))
+                .header("Accept", "text/event-stream")
+                .GET()
+                .build();
+        Thread t = new Thread(() -> {
+            Throwable failure = null;
+            try {
+                HttpResponse<java.util.stream.Stream<String>> resp = client.send(req, HttpResponse.BodyHandlers.ofLines());
+                log("GET /playback/stream status=" + resp.statusCode());
+                if (resp.statusCode() != 200) {
+                    resp.body().close();
+                    throw new RuntimeException("Playback stream failed: " + resp.statusCode());
+                }
+                StringBuilder data = new StringBuilder();
+                try (var lines = resp.body()) {
+                    for (var it = lines.iterator(); it.hasNext(); ) {
+                        String line = it.next();
+                        if (line.isEmpty()) {
+                            if (data.length() > 0) {
+                                PlaybackState state = mapper.readValue(data.toString(), PlaybackState.class);
+                                Platform.runLater(() -> onState.accept(state));
+                                data.setLength(0);
+                            }
+                        } else if (line.startsWith("data:")) {
+                            if (data.length() > 0) data.append('\n');
+                            data.append(line.substring(5).stripLeading());
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+            Throwable closedWith = failure;
+            Platform.runLater(() -> onClosed.accept(closedWith));
+        }, "PlaybackStream");
+        t.setDaemon(true);
+        t.start();
+    }
+
     public void play(Runnable onSuccess, Consumer<Throwable> onError) {
         client.sendAsync(build("POST", "/playback/play", null), HttpResponse.BodyHandlers.ofString())
             .thenApply(resp -> { log("POST /playback/play status="+resp.statusCode()); return resp; })
@@ -242,57 +242,61 @@ public class PlaybackBar {
 
     public void refreshPlayback() {
         apiClient.getPlaybackState(state -> {
-            long now = System.currentTimeMillis();
             String newTitle = state.getTrackName() + " - " + state.getArtistName();
-            String currentTitle = trackInfo.getText();
-            boolean isNewTrack = !newTitle.equals(currentTitle);
-
-            int apiProg = state.getProgressMs();
+            boolean isNewTrack = !newTitle.equals(trackInfo.getText());
             int lastProg = (lastState != null) ? lastState.getProgressMs() : -1;
             boolean playStatusChanged = (lastState == null) || (lastState.isPlaying() != state.isPlaying());
 
             this.currentTrackUri = state.getTrackUri();
 
-            if (isNewTrack || playStatusChanged || apiProg >= lastProg || lastProg < 0) {
-                lastState = state;
-                lastStateFetchTimestamp = now;
-                Platform.runLater(() -> {
-                    trackInfo.setText(newTitle);
-                    playPauseBtn.setText(state.isPlaying() ? "⏸" : "▶");
-
-                    String url = state.getAlbumImageUrl();
-                    if (url != null && !url.isBlank()) {
-                        if (!url.equals(currentAlbumUrl)) {
-                            currentAlbumUrl = url;
-
-                            Image cached = albumImageCache.get(url);
-                            if (cached != null && cached.getProgress() >= 1.0 && !cached.isError()) {
-                                albumCover.setImage(cached);
-                            } else {
-                                Image pending = new Image(url, true);
-                                albumImageCache.put(url, pending);
-
-                                if (pending.isBackgroundLoading()) {
-                                    pending.progressProperty().addListener((obs, ov, nv) -> {
-                                        if (nv.doubleValue() >= 1.0 && url.equals(currentAlbumUrl)) {
-                                            albumCover.setImage(pending);
-                                        }
-                                    });
-                                } else {
+            if (isNewTrack || playStatusChanged || state.getProgressMs() >= lastProg || lastProg < 0) {
+                applyState(state);
+            }
+        }, ex -> updateStatus("Refresh failed: " + ex.getMessage()));
+    }
+
+    /** Shows a state pushed by the backend; pushes only happen on real changes, so it is always taken. */
+    public void applyState(PlaybackState state) {
+        this.currentTrackUri = state.getTrackUri();
+        String newTitle = state.getTrackName() + " - " + state.getArtistName();
+        int apiProg = state.getProgressMs();
+        lastState = state;
+        lastStateFetchTimestamp = System.currentTimeMillis();
+        Platform.runLater(() -> {
+            trackInfo.setText(newTitle);
+            playPauseBtn.setText(state.isPlaying() ? "⏸" : "▶");
+
+            String url = state.getAlbumImageUrl();
+            if (url != null && !url.isBlank()) {
+                if (!url.equals(currentAlbumUrl)) {
+                    currentAlbumUrl = url;
+
+                    Image cached = albumImageCache.get(url);
+                    if (cached != null && cached.getProgress() >= 1.0 && !cached.isError()) {
+                        albumCover.setImage(cached);
+                    } else {
+                        Image pending = new Image(url, true);
+                        albumImageCache.put(url, pending);
+
+                        if (pending.isBackgroundLoading()) {
+                            pending.progressProperty().addListener((obs, ov, nv) -> {
+                                if (nv.doubleValue() >= 1.0 && url.equals(currentAlbumUrl)) {
                                     albumCover.setImage(pending);
                                 }
-                            }
+                            });
+                        } else {
+                            albumCover.setImage(pending);
                         }
                     }
+                }
+            }
 
-                    if (!progressSlider.isValueChanging() && !isSeeking) {
-                        double frac = (double) apiProg / Math.max(1, state.getDurationMs());
-                        progressSlider.setValue(frac);
-                        timeLabel.setText(formatTime(apiProg) + " / " + formatTime(state.getDurationMs()));
-                    }
-                });
+            if (!progressSlider.isValueChanging() && !isSeeking) {
+                double frac = (double) apiProg / Math.max(1, state.getDurationMs());
+                progressSlider.setValue(frac);
+                timeLabel.setText(formatTime(apiProg) + " / " + formatTime(state.getDurationMs()));
             }
-        }, ex -> updateStatus("Refresh failed: " + ex.getMessage()));
+        });
     }
 
     private void onSeekComplete(int pos) {
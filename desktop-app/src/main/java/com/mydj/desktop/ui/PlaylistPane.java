@@ -30,7 +30,6 @@ public class PlaylistPane {
     private String selectedPlaylistId = null;
     private Consumer<PlaylistInfo> onPlaylistChanged = p -> {};
     private final Map<String, String> displayToUri = new HashMap<>();
-    private Set<String> seenDisplays = new HashSet<>();
     private static final PseudoClass PC_PLAYING = PseudoClass.getPseudoClass("playing");
     private volatile String playingUri;
 
@@ -99,6 +98,11 @@ public class PlaylistPane {
 
         refreshButton.setOnAction(e -> refreshTracks());
 
+        // The backend keeps the Spotify queue topped up from this playlist, with or without this window open.
+        autoQueueToggle.setOnAction(e -> syncAutoQueue());
+        apiClient.getAutoDj(enabled -> autoQueueToggle.setSelected(enabled),
+            ex -> System.err.println("getAutoDj failed: " + ex.getMessage()));
+
         playlistCombo.setOnAction(e -> {
             String sel = playlistCombo.getValue();
             if (sel == null) return;
@@ -108,7 +112,7 @@ public class PlaylistPane {
                     if (p.getName().equals(sel)) {
                         selectedPlaylistId = p.getId();
                         onPlaylistChanged.accept(p);
-                        seenDisplays.clear();
+                        if (autoQueueToggle.isSelected()) syncAutoQueue();
                         refreshTracks();
                         break;
                     }
@@ -117,6 +121,16 @@ public class PlaylistPane {
         });
     }
 
+    private void syncAutoQueue() {
+        boolean on = autoQueueToggle.isSelected();
+        apiClient.setAutoDj(on, selectedPlaylistId,
+            enabled -> autoQueueToggle.setSelected(enabled),
+            ex -> {
+                System.err.println("setAutoDj failed: " + ex.getMessage());
+                autoQueueToggle.setSelected(!on);
+            });
+    }
+
     private void centerTitle(Label lbl) {
         lbl.getStyleClass().add("section-title");
         lbl.setMaxWidth(Double.MAX_VALUE);
@@ -163,16 +177,6 @@ public class PlaylistPane {
                 displayToUri.put(disp, t.getUri());
             }
 
-            if (autoQueueToggle.isSelected()) {
-                for (String disp : displays) {
-                    if (!seenDisplays.contains(disp)) {
-                        String uri = displayToUri.get(disp);
-                        new Thread(() -> apiClient.queue(uri, () -> {}, ex -> {}), "AutoQueue").start();
-                    }
-                }
-            }
-
-            seenDisplays = new HashSet<>(displays);
             trackListView.getItems().setAll(displays);
         }, ex -> System.err.println("Failed to fetch tracks: " + ex.getMessage()));
     }
@@ -15,6 +15,7 @@ import javafx.css.PseudoClass;
 
 import java.util.*;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public class RequestsPane {
 
@@ -31,7 +32,11 @@ public class RequestsPane {
     private final VBox validBox = new VBox(8);
     private final VBox invalidBox = new VBox(8);
     private final Map<String, String> displayToUri = new HashMap<>();
+    private final LinkedHashMap<String, RequestRecord> requestsByUri = new LinkedHashMap<>();
+    private Long requestsVersion;
     private BiConsumer<String, String> onAddToPlaylist = (d, u) -> {};
+    private Consumer<List<String>> onAddAllToPlaylist = uris -> {};
+    private final Set<String> addsInFlight = new HashSet<>();
     private static final PseudoClass PC_PLAYING = PseudoClass.getPseudoClass("playing");
     private volatile String playingUri;
 
@@ -119,10 +124,10 @@ public class RequestsPane {
             }
         });
 
-        autoAddToggle.setOnAction(e -> loadRequests());
+        autoAddToggle.setOnAction(e -> render());
         explicitToggle.setOnAction(e -> apiClient.setAllowExplicit(
             explicitToggle.isSelected(),
-            () -> Platform.runLater(this::loadRequests), 
+            () -> Platform.runLater(() -> { render(); loadRequests(); }),
             err -> System.err.println("setAllowExplicit failed: " + err)
         ));
     }
@@ -144,40 +149,65 @@ public class RequestsPane {
     public Node getInvalidBox() { return invalidBox; }
 
     public void loadRequests() {
-        apiClient.getRequests(map -> {
-            List<RequestRecord> valid = map.getOrDefault("valid", Collections.emptyList());
-            List<RequestRecord> invalid = map.getOrDefault("invalid", Collections.emptyList());
+        apiClient.getRequests(requestsVersion, update -> {
+            if (update == null) return; // unchanged since requestsVersion
+            if (requestsVersion != null && update.getVersion() < requestsVersion) return; // overtaken
+
+            if (update.isFull()) requestsByUri.clear();
+            for (String uri : update.getRemoved()) requestsByUri.remove(uri);
+            for (RequestRecord r : update.getRecords()) requestsByUri.put(r.getUri(), r);
+            requestsVersion = update.getVersion();
+            render();
+        }, ex -> System.err.println("Failed to load requests: " + ex.getMessage()));
+    }
 
-            boolean explicitAllowed = explicitToggle.isSelected();
+    private void render() {
+        boolean explicitAllowed = explicitToggle.isSelected();
 
-            List<String> validDisplays = new ArrayList<>();
-            List<String> invalidDisplays = new ArrayList<>();
-            displayToUri.clear();
+        List<String> validDisplays = new ArrayList<>();
+        List<String> invalidDisplays = new ArrayList<>();
+        displayToUri.clear();
 
-            for (RequestRecord r : valid) {
-                String display = r.display();
-                displayToUri.put(display, r.getUri());
-                if (explicitAllowed || !r.isExplicit()) validDisplays.add(display);
-                else invalidDisplays.add(display);
-            }
-            for (RequestRecord r : invalid) {
-                String display = r.display();
-                displayToUri.put(display, r.getUri());
-                invalidDisplays.add(display);
-            }
+        for (RequestRecord r : requestsByUri.values()) {
+            String display = r.display();
+            displayToUri.put(display, r.getUri());
+            if (r.isValid() && (explicitAllowed || !r.isExplicit())) validDisplays.add(display);
+            else invalidDisplays.add(display);
+        }
 
-            Platform.runLater(() -> {
-                validListView.getItems().setAll(validDisplays);
-                invalidListView.getItems().setAll(invalidDisplays);
+        Platform.runLater(() -> {
+            validListView.getItems().setAll(validDisplays);
+            invalidListView.getItems().setAll(invalidDisplays);
 
-                if (autoAddToggle.isSelected()) {
-                    for (String display : validDisplays) {
-                        String uri = displayToUri.get(display);
-                        onAddToPlaylist.accept(display, uri);
-                    }
+            if (autoAddToggle.isSelected()) {
+                List<String> fresh = new ArrayList<>();
+                for (String display : validDisplays) {
+                    String uri = displayToUri.get(display);
+                    // each poll re-renders; don't fire again while the first add is still out
+                    if (uri != null && addsInFlight.add(uri)) fresh.add(uri);
                 }
-            });
-        }, ex -> System.err.println("Failed to load requests: " + ex.getMessage()));
+                if (!fresh.isEmpty()) onAddAllToPlaylist.accept(fresh);
+            }
+        });
+    }
+
+    /** Called once an add has been answered, whatever the outcome. */
+    public void addFinished(String uri) {
+        addsInFlight.remove(uri);
+    }
+
+    public void setOnAddAllToPlaylist(Consumer<List<String>> handler) {
+        this.onAddAllToPlaylist = handler != null ? handler : uris -> {};
+    }
+
+    public void removeUri(String uri) {
+        requestsByUri.remove(uri);
+        displayToUri.entrySet().removeIf(e -> {
+            if (!uri.equals(e.getValue())) return false;
+            validListView.getItems().remove(e.getKey());
+            invalidListView.getItems().remove(e.getKey());
+            return true;
+        });
     }
 
     public void setOnAddToPlaylist(BiConsumer<String, String> handler) {
@@ -199,6 +229,7 @@ public class RequestsPane {
     public void removeDisplay(String display) {
         validListView.getItems().remove(display);
         invalidListView.getItems().remove(display);
-        displayToUri.remove(display);
+        String uri = displayToUri.remove(display);
+        if (uri != null) requestsByUri.remove(uri);
     }
 }